@@ -0,0 +1,57 @@
+package bguspl.set;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+
+/**
+ * Checks triples of cards (with 3 values per feature) a vector of triples at a time, using the Java Vector API.
+ * Compiled only by the vector build profile (JDK 17 or later), and used only when the JVM runs with
+ * --add-modules jdk.incubator.vector (see UtilImpl.setValidator).
+ * Works like ScalarSetValidator: the packed features of the three cards of each lane are gathered and added, and
+ * every 3 bit field of the sum must be 0, 3 or 6.
+ */
+class VectorSetValidator implements SetValidator {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private final int featureCount;
+    private final int[] packed;
+
+    VectorSetValidator(Config config) {
+        if (config.featureSize != 3) throw new IllegalArgumentException("only for 3 values per feature");
+        featureCount = config.featureCount;
+        packed = ScalarSetValidator.packFeatures(config);
+    }
+
+    /**
+     * @return - the number of triples checked at a time.
+     */
+    static int lanes() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public void testSets(int[] first, int[] second, int[] third, int count, long[] legal) {
+        Arrays.fill(legal, 0, (count + Long.SIZE - 1) / Long.SIZE, 0L);
+        IntVector valid = IntVector.broadcast(SPECIES, 0b1001001);
+        int i = 0;
+        for (int bound = SPECIES.loopBound(count); i < bound; i += SPECIES.length()) {
+            IntVector sum = IntVector.fromArray(SPECIES, packed, 0, first, i)
+                    .add(IntVector.fromArray(SPECIES, packed, 0, second, i))
+                    .add(IntVector.fromArray(SPECIES, packed, 0, third, i));
+            VectorMask<Integer> ok = SPECIES.maskAll(true);
+            for (int f = 0; f < featureCount; f++) {
+                IntVector field = sum.lanewise(VectorOperators.LSHR, 3 * f).and(7);
+                ok = ok.and(valid.lanewise(VectorOperators.LSHR, field).and(1).compare(VectorOperators.NE, 0));
+            }
+            legal[i >>> 6] |= ok.toLong() << i; // the lanes (a power of 2 up to 16) never cross a long
+        }
+        for (; i < count; i++)
+            if (ScalarSetValidator.divisibleBy3(packed[first[i]] + packed[second[i]] + packed[third[i]], featureCount))
+                legal[i >>> 6] |= 1L << i;
+    }
+}
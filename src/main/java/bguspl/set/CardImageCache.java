@@ -0,0 +1,74 @@
+package bguspl.set;
+
+import java.awt.Image;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * The images of the most recently displayed cards, loaded (or drawn) on demand, so the memory used for card images
+ * depends on the cache size rather than on the deck size. The least recently used image is evicted when the cache
+ * is full (the table still shows an evicted image until its card is removed).
+ * All methods are thread safe.
+ */
+class CardImageCache {
+
+    private final int capacity;
+    private final IntFunction<Image> loader;
+    private final LinkedHashMap<Integer, Image> images;
+
+    private long hits;
+    private long misses;
+    private long loadNanos;
+
+    /**
+     * @param capacity - the maximal number of images kept (at least 1).
+     * @param loader   - creates the image of a card.
+     */
+    CardImageCache(int capacity, IntFunction<Image> loader) {
+        this.capacity = Math.max(1, capacity);
+        this.loader = loader;
+        this.images = new LinkedHashMap<Integer, Image>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Image> eldest) {
+                return size() > CardImageCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * @param card - the card id.
+     * @return - the image of the card (created if it is not in the cache).
+     */
+    synchronized Image get(int card) {
+        Image image = images.get(card);
+        if (image != null) {
+            hits++;
+            return image;
+        }
+        misses++;
+        long start = System.nanoTime();
+        image = loader.apply(card);
+        loadNanos += System.nanoTime() - start;
+        images.put(card, image);
+        return image;
+    }
+
+    synchronized int size() {
+        return images.size();
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("card images: %d cached (capacity %d), %d hits, %d misses, %.1f ms loading",
+                images.size(), capacity, hits, misses, loadNanos / 1e6);
+    }
+}
@@ -0,0 +1,181 @@
+package bguspl.set;
+
+import java.awt.*;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Draws the cards from their features instead of loading an image file per card, so any deck can be displayed
+ * (any FeatureSize and FeatureCount) without asset files. The features are drawn like the card images:
+ * <ul>
+ * <li>feature 0: the number of symbols (1 to featureSize)</li>
+ * <li>feature 1: the color (red, purple, green, then more hues)</li>
+ * <li>feature 2: the shape (squiggle, diamond, oval, then a pentagon, a hexagon...)</li>
+ * <li>feature 3: the shading (solid, striped, open, then lighter and lighter fills)</li>
+ * <li>more features: their values, printed in the bottom right corner</li>
+ * </ul>
+ * Stateless (can draw on any thread).
+ */
+class CardRenderer {
+
+    private static final Color[] COLORS = {new Color(0xED, 0x1C, 0x24), new Color(0x66, 0x2D, 0x91), new Color(0x00, 0xA6, 0x51)};
+
+    private final Util util;
+    private final int width;
+    private final int height;
+    private final int featureSize;
+
+    /**
+     * @param util   - converts the cards to their features.
+     * @param config - the game configuration (the feature size and the cell size).
+     */
+    CardRenderer(Util util, Config config) {
+        this.util = util;
+        this.width = config.cellWidth;
+        this.height = config.cellHeight;
+        this.featureSize = config.featureSize;
+    }
+
+    /**
+     * Draws a card on a new image of the cell size.
+     *
+     * @param card - the card id.
+     * @return - the image.
+     */
+    BufferedImage render(int card) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        render(g, card);
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * @return - a new image of an empty cell.
+     */
+    BufferedImage renderEmpty() {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * Draws a card on a graphics context, in the rectangle (0, 0, width, height).
+     */
+    void render(Graphics2D g, int card) {
+        int[] features = util.cardToFeatures(card);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+
+        int count = value(features, 0) + 1;
+        Color color = color(value(features, 1));
+        int shape = value(features, 2);
+        int shading = value(features, 3);
+
+        // the symbols are tall, side by side, in as many rows as needed
+        int perRow = Math.min(count, 3);
+        int rows = (count + perRow - 1) / perRow;
+        double cellWidth = width / (perRow + 1.0);
+        double symbolHeight = height * 0.7 / rows;
+        double symbolWidth = Math.min(cellWidth * 0.8, symbolHeight * 0.5);
+        float stroke = (float) Math.max(1.5, symbolWidth / 12);
+        for (int i = 0; i < count; i++) {
+            int row = i / perRow;
+            int inRow = Math.min(perRow, count - row * perRow);
+            double centerX = width / 2.0 + (i % perRow - (inRow - 1) / 2.0) * cellWidth;
+            double centerY = height * 0.15 + (row + 0.5) * symbolHeight;
+            Shape symbol = shape(shape, centerX - symbolWidth / 2, centerY - symbolHeight * 0.45, symbolWidth, symbolHeight * 0.9);
+            fill(g, symbol, color, shading, stroke);
+        }
+
+        if (features.length > 4) {
+            StringBuilder more = new StringBuilder();
+            for (int f = 4; f < features.length; f++)
+                more.append(f > 4 ? " " : "").append(features[f] + 1);
+            g.setColor(Color.DARK_GRAY);
+            g.setFont(new Font("SansSerif", Font.BOLD, Math.max(10, height / 10)));
+            FontMetrics metrics = g.getFontMetrics();
+            g.drawString(more.toString(), width - metrics.stringWidth(more.toString()) - height / 20, height - height / 20);
+        }
+    }
+
+    private static int value(int[] features, int feature) {
+        return feature < features.length ? features[feature] : 0;
+    }
+
+    private Color color(int value) {
+        if (value < COLORS.length) return COLORS[value];
+        return Color.getHSBColor((float) value / featureSize, 0.85f, 0.75f);
+    }
+
+    private static Shape shape(int value, double x, double y, double w, double h) {
+        switch (value) {
+            case 0: // squiggle
+                GeneralPath squiggle = new GeneralPath();
+                squiggle.moveTo(x + w * 0.45, y);
+                squiggle.curveTo(x + w * 1.1, y, x + w, y + h * 0.4, x + w * 0.85, y + h * 0.6);
+                squiggle.curveTo(x + w * 0.7, y + h * 0.8, x + w * 1.1, y + h, x + w * 0.55, y + h);
+                squiggle.curveTo(x - w * 0.1, y + h, x, y + h * 0.6, x + w * 0.15, y + h * 0.4);
+                squiggle.curveTo(x + w * 0.3, y + h * 0.2, x - w * 0.1, y, x + w * 0.45, y);
+                squiggle.closePath();
+                return squiggle;
+            case 1: // diamond
+                return polygon(4, x, y, w, h);
+            case 2: // oval
+                return new RoundRectangle2D.Double(x, y, w, h, w, w);
+            default: // a polygon with value + 2 sides (a pentagon, a hexagon...)
+                return polygon(value + 2, x, y, w, h);
+        }
+    }
+
+    /**
+     * @return - a regular polygon with a vertex at the top, stretched to the rectangle.
+     */
+    private static Shape polygon(int sides, double x, double y, double w, double h) {
+        Path2D.Double polygon = new Path2D.Double();
+        for (int i = 0; i < sides; i++) {
+            double angle = 2 * Math.PI * i / sides - Math.PI / 2;
+            double px = x + w / 2 + Math.cos(angle) * w / 2;
+            double py = y + h / 2 + Math.sin(angle) * h / 2;
+            if (i == 0) polygon.moveTo(px, py);
+            else polygon.lineTo(px, py);
+        }
+        polygon.closePath();
+        return polygon;
+    }
+
+    private void fill(Graphics2D g, Shape symbol, Color color, int shading, float stroke) {
+        switch (shading) {
+            case 0: // solid
+                g.setColor(color);
+                g.fill(symbol);
+                break;
+            case 1: // striped
+                Shape clip = g.getClip();
+                g.clip(symbol);
+                g.setColor(color);
+                g.setStroke(new BasicStroke(stroke * 0.75f));
+                Rectangle bounds = symbol.getBounds();
+                for (double y = bounds.y; y < bounds.y + bounds.height; y += stroke * 3)
+                    g.draw(new Line2D.Double(bounds.x, y, bounds.x + bounds.width, y));
+                g.setClip(clip);
+                break;
+            case 2: // open
+                break;
+            default: // lighter fills
+                g.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(),
+                        Math.max(24, 160 * (featureSize - shading) / featureSize)));
+                g.fill(symbol);
+        }
+        g.setColor(color);
+        g.setStroke(new BasicStroke(stroke));
+        g.draw(symbol);
+    }
+}
@@ -0,0 +1,108 @@
+package bguspl.set;
+
+import java.util.Arrays;
+
+/**
+ * A compact, growable list of sets of cards, all of the same size, stored back to back in a single int array.
+ */
+public class CardSets {
+
+    /**
+     * The number of cards in each set.
+     */
+    private final int setSize;
+
+    /**
+     * The cards of all sets (set i occupies indices i * setSize to (i + 1) * setSize - 1).
+     */
+    private int[] cards;
+
+    /**
+     * The number of sets in the list.
+     */
+    private int size;
+
+    /**
+     * @param setSize - the number of cards in each set.
+     */
+    public CardSets(int setSize) {
+        this(setSize, 4);
+    }
+
+    /**
+     * @param setSize  - the number of cards in each set.
+     * @param capacity - the initial number of sets the list can hold without growing.
+     */
+    public CardSets(int setSize, int capacity) {
+        this.setSize = setSize;
+        this.cards = new int[setSize * Math.max(capacity, 1)];
+    }
+
+    /**
+     * Appends a set to the list.
+     *
+     * @param set - an array holding the cards of the set, starting at index 0.
+     */
+    public void add(int[] set) {
+        ensureCapacity(size + 1);
+        System.arraycopy(set, 0, cards, size * setSize, setSize);
+        size++;
+    }
+
+    /**
+     * Appends all the sets of another list to this list.
+     *
+     * @param other - the list to append (must have the same set size).
+     */
+    public void addAll(CardSets other) {
+        if (other.setSize != setSize) throw new IllegalArgumentException("set sizes differ: " + other.setSize + " " + setSize);
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.cards, 0, cards, size * setSize, other.size * setSize);
+        size += other.size;
+    }
+
+    /**
+     * Removes the sets at the end of the list, keeping only the first sets.
+     *
+     * @param newSize - the number of sets to keep.
+     */
+    public void truncate(int newSize) {
+        size = Math.min(size, newSize);
+    }
+
+    /**
+     * @return - the number of sets in the list.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return - the number of cards in each set.
+     */
+    public int setSize() {
+        return setSize;
+    }
+
+    /**
+     * @param set   - the index of the set in the list.
+     * @param index - the index of the card in the set.
+     * @return - the card.
+     */
+    public int card(int set, int index) {
+        return cards[set * setSize + index];
+    }
+
+    /**
+     * @param set - the index of the set in the list.
+     * @return - a new array with the cards of the set.
+     */
+    public int[] get(int set) {
+        return Arrays.copyOfRange(cards, set * setSize, (set + 1) * setSize);
+    }
+
+    private void ensureCapacity(int sets) {
+        if (sets * setSize > cards.length)
+            cards = Arrays.copyOf(cards, Math.max(sets * setSize, cards.length * 2));
+    }
+}
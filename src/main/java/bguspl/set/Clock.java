@@ -0,0 +1,29 @@
+package bguspl.set;
+
+/**
+ * The source of time for the game threads: reading the current time and sleeping.
+ * All game code reads and waits for time through this interface, so a game can run on simulated time.
+ */
+public interface Clock {
+
+    /**
+     * @return - the current time in milliseconds.
+     */
+    long currentTimeMillis();
+
+    /**
+     * Sleeps for the specified number of milliseconds.
+     *
+     * @param millis - the time to sleep.
+     * @throws InterruptedException - if the thread was interrupted while sleeping.
+     */
+    void sleep(long millis) throws InterruptedException;
+
+    /**
+     * Registers a game thread with the clock (called by the thread itself when it starts).
+     * Clocks that simulate time use this to know when all game threads are idle.
+     *
+     * @param thread - the game thread.
+     */
+    default void register(Thread thread) {}
+}
@@ -21,6 +21,11 @@ public class Config {
     public final long randomSpinMin;
     public final long randomSpinMax;
 
+    /**
+     * Whether every user interface update is logged (and delayed by a random spin)
+     */
+    public final boolean logUserInterface;
+
     /**
      * The number of features on the cards (e.g. shape, color etc.)
      */
@@ -36,6 +41,21 @@ public class Config {
      */
     public final int deckSize;
 
+    /**
+     * The minimal number of cards for which searching for sets is split across threads
+     */
+    public final int parallelSetSearchThreshold;
+
+    /**
+     * The maximal number of card collections for which the result of searching for a set is cached
+     */
+    public final int setCacheSize;
+
+    /**
+     * The file of precomputed set tables to memory-map (generated if it does not exist), or empty for none
+     */
+    public final String setTablesFile;
+
     /**
      * The number of human players in the game.
      */
@@ -46,6 +66,21 @@ public class Config {
      */
     public final int computerPlayers;
 
+    /**
+     * The number of key presses per second each computer player may make (0 for as fast as the queue allows)
+     */
+    public final double computerPressesPerSecond;
+
+    /**
+     * The number of key presses a computer player may make at once after a pause (when the presses are limited)
+     */
+    public final int computerPressBurst;
+
+    /**
+     * The number of cores all the computer players of the process may use together (0 for no limit)
+     */
+    public final double computerCpuBudget;
+
     /**
      * The total number of players (human + computer) in the game
      */
@@ -86,6 +121,51 @@ public class Config {
      */
     public final long endGamePauseMillies;
 
+    /**
+     * The maximal number of milliseconds to wait for the game threads to stop when the game ends
+     */
+    public final long shutdownTimeoutMillis;
+
+    /**
+     * Whether the game runs on simulated time (which jumps forward whenever all game threads are idle)
+     */
+    public final boolean virtualTime;
+
+    /**
+     * The number of key presses that can be pending for each player
+     */
+    public final int inputQueueCapacity;
+
+    /**
+     * What to do with a key press when the player's pending presses queue is full
+     */
+    public final OverflowPolicy inputOverflowPolicy;
+
+    /**
+     * The number of user interface updates that can be pending for each subscriber (the display, the log)
+     */
+    public final int eventQueueCapacity;
+
+    /**
+     * What to do with a user interface update when a subscriber's pending updates queue is full
+     */
+    public final OverflowPolicy eventOverflowPolicy;
+
+    /**
+     * The file to append the statistics of each game to (empty for no statistics)
+     */
+    public final String statisticsFile;
+
+    /**
+     * The number of games kept in memory before their statistics are written to the statistics file
+     */
+    public final int statisticsBlockGames;
+
+    /**
+     * The directory of the tournament store to record the results and ratings of the players in (empty for none)
+     */
+    public final String tournamentDirectory;
+
     /**
      * The names of the players to display on the screen
      * Note: if there are more players than names, the remaining players will be called "Player 3", "Player 4", etc.
@@ -107,6 +187,18 @@ public class Config {
      */
     public final int tableSize;
 
+    /**
+     * The maximal number of columns in the grid of cards: when there is no legal set on the table, the dealer adds
+     * a column of cards (up to this many columns) instead of waiting for the reshuffle
+     */
+    public final int maxColumns;
+
+    /**
+     * The maximal number of cells in the table grid (the cells of the added columns are numbered after the
+     * tableSize cells, column by column)
+     */
+    public final int maxTableSize;
+
     /**
      * The width (in pixels) of each cell
      */
@@ -127,11 +219,44 @@ public class Config {
      */
     public final int playerCellHeight;
 
+    /**
+     * The number of best ranked players on the scoreboard (the human players are shown too); when there are no more
+     * players than this, all of them are shown in a fixed order
+     */
+    public final int scoreboardSize;
+
+    /**
+     * Where the card images come from: "files" (a png file per card in the cards resources directory), "rendered"
+     * (drawn from the card features) or "auto" (the files if there is one for every card, otherwise rendered)
+     */
+    public final String cardImages;
+
+    /**
+     * The maximal number of card images kept in memory (the least recently used ones are loaded or drawn again)
+     */
+    public final int cardImageCacheSize;
+
     /**
      * The size of the displayed font
      */
     public final int fontSize;
 
+    /**
+     * The user interface to display the game with: "swing", "headless" (nothing) or "counting" (nothing, only counts
+     * the updates)
+     */
+    public final String userInterface;
+
+    /**
+     * Whether to repaint the changed cards in a fixed rate render loop (otherwise they are repainted on change)
+     */
+    public final boolean activeRendering;
+
+    /**
+     * The number of frames per second of the render loop (when activeRendering is true)
+     */
+    public final int renderFps;
+
     /**
      * The scancodes of the keyboard input data for each player
      * Notes:
@@ -145,8 +270,8 @@ public class Config {
      * The default scan codes data (this is the same as in the default config.properties file)
      */
     private static final String[] playerKeysDefaults = {
-            "81,87,69,82,65,83,68,70,90,88,67,86",
-            "85,73,79,80,74,75,76,59,77,44,46,47"};
+            "81,87,69,82,65,83,68,70,90,88,67,86,84,71,66",
+            "85,73,79,80,74,75,76,59,77,44,46,47,89,72,78"};
 
     /**
      * Attempts to read the config properties from the current working directory. Otherwise, tries to load them
@@ -190,6 +315,7 @@ public class Config {
         // for debugging
         randomSpinMin = Long.parseLong(properties.getProperty("RandomSpinMin", "0"));
         randomSpinMax = Long.parseLong(properties.getProperty("RandomSpinMax", "0"));
+        logUserInterface = Boolean.parseBoolean(properties.getProperty("LogUserInterface", "True"));
         if (randomSpinMax < randomSpinMin || randomSpinMin < 0)
             logger.severe("invalid random spin cycles: max: " + randomSpinMax + " min: " + randomSpinMin);
 
@@ -197,11 +323,17 @@ public class Config {
         featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
         featureCount = Integer.parseInt(properties.getProperty("FeatureCount", "4"));
         deckSize = (int) Math.pow(featureSize, featureCount);
+        setCacheSize = Integer.parseInt(properties.getProperty("SetCacheSize", "1024"));
+        parallelSetSearchThreshold = Integer.parseInt(properties.getProperty("ParallelSetSearchThreshold", "64"));
+        setTablesFile = properties.getProperty("SetTablesFile", "").trim();
 
         // gameplay settings
         humanPlayers = Integer.parseInt(properties.getProperty("HumanPlayers", "2"));
         computerPlayers = Integer.parseInt(properties.getProperty("ComputerPlayers", "0"));
         players = humanPlayers + computerPlayers;
+        computerPressesPerSecond = Double.parseDouble(properties.getProperty("ComputerPressesPerSecond", "0"));
+        computerPressBurst = Integer.parseInt(properties.getProperty("ComputerPressBurst", "3"));
+        computerCpuBudget = Double.parseDouble(properties.getProperty("ComputerCpuBudget", "0"));
 
         hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
         turnTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "60")) * 1000.0);
@@ -210,6 +342,16 @@ public class Config {
         penaltyFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PenaltyFreezeSeconds", "3")) * 1000.0);
         tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
         endGamePauseMillies = (long) (Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) * 1000.0);
+        shutdownTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("ShutdownTimeoutSeconds", "1")) * 1000.0);
+        virtualTime = Boolean.parseBoolean(properties.getProperty("VirtualTime", "False"));
+        inputQueueCapacity = Integer.parseInt(properties.getProperty("InputQueueCapacity", "3"));
+        inputOverflowPolicy = OverflowPolicy.parse(properties.getProperty("InputOverflowPolicy", "DropNewest"));
+        eventQueueCapacity = Integer.parseInt(properties.getProperty("EventQueueCapacity", "1024"));
+        eventOverflowPolicy = OverflowPolicy.parse(properties.getProperty("EventOverflowPolicy", "DropOldest"));
+
+        statisticsFile = properties.getProperty("StatisticsFile", "").trim();
+        statisticsBlockGames = Integer.parseInt(properties.getProperty("StatisticsBlockGames", "1024"));
+        tournamentDirectory = properties.getProperty("TournamentDirectory", "").trim();
 
         // ui settings
         String[] names = properties.getProperty("PlayerNames", "Player 1, Player 2").split(",");
@@ -219,23 +361,31 @@ public class Config {
         rows = Integer.parseInt(properties.getProperty("Rows", "3"));
         columns = Integer.parseInt(properties.getProperty("Columns", "4"));
         tableSize = rows * columns;
+        maxColumns = Math.max(columns, Integer.parseInt(properties.getProperty("MaxColumns", Integer.toString(columns + 1))));
+        maxTableSize = rows * maxColumns;
         cellWidth = Integer.parseInt(properties.getProperty("CellWidth", "258"));
         cellHeight = Integer.parseInt(properties.getProperty("CellHeight", "167"));
         playerCellWidth = Integer.parseInt(properties.getProperty("PlayerCellWidth", "300"));
         playerCellHeight = Integer.parseInt(properties.getProperty("PlayerCellHeight", "40"));
+        scoreboardSize = Integer.parseInt(properties.getProperty("ScoreboardSize", "8"));
         fontSize = Integer.parseInt(properties.getProperty("FontSize", "40"));
+        cardImages = properties.getProperty("CardImages", "Auto").trim().toLowerCase();
+        cardImageCacheSize = Integer.parseInt(properties.getProperty("CardImageCacheSize", "64"));
+        userInterface = properties.getProperty("UserInterface", "Swing").trim().toLowerCase();
+        activeRendering = Boolean.parseBoolean(properties.getProperty("ActiveRendering", "False"));
+        renderFps = Integer.parseInt(properties.getProperty("RenderFps", "60"));
 
         // keyboard input data
-        playerKeys = new int[players][rows * columns];
+        playerKeys = new int[players][maxTableSize];
         for (int i = 0; i < players; i++) {
             String defaultCodes = "";
             if (i < 2) defaultCodes = playerKeysDefaults[i];
             String playerKeysString = properties.getProperty("PlayerKeys" + (i + 1), defaultCodes);
             if (playerKeysString.length() > 0) {
                 String[] codes = playerKeysString.split(",");
-                if (codes.length != tableSize)
+                if (codes.length < tableSize || codes.length > maxTableSize)
                     logger.severe("warning: player " + (i + 1) + " keys (" + codes.length + ") mismatch table size (" + tableSize + ").");
-                for (int j = 0; j < Math.min(codes.length, tableSize); ++j) // parse the key codes string
+                for (int j = 0; j < Math.min(codes.length, maxTableSize); ++j) // parse the key codes string
                     playerKeys[i][j] = Integer.parseInt(codes[j]);
             }
         }
@@ -244,4 +394,27 @@ public class Config {
     public int[] playerKeys(int player) {
         return playerKeys[player];
     }
+
+    /**
+     * @param slot - a slot of the table grid (up to maxTableSize).
+     * @return     - the row of the slot on the screen.
+     */
+    public int slotRow(int slot) {
+        return slot < tableSize ? slot / columns : (slot - tableSize) % rows;
+    }
+
+    /**
+     * @param slot - a slot of the table grid (up to maxTableSize).
+     * @return     - the column of the slot on the screen.
+     */
+    public int slotColumn(int slot) {
+        return slot < tableSize ? slot % columns : columns + (slot - tableSize) / rows;
+    }
+
+    /**
+     * @return - the slot at a row and a column of the grid on the screen.
+     */
+    public int slot(int row, int column) {
+        return column < columns ? row * columns + column : tableSize + (column - columns) * rows + row;
+    }
 }
@@ -0,0 +1,116 @@
+package bguspl.set;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A CPU time budget shared by several threads (e.g. all the computer players of a process), as a number of cores:
+ * the threads report the CPU time they used, and the one that overdraws the budget sleeps until the budget
+ * catches up. Unused budget is kept for at most one window, so an idle period does not allow a long burst.
+ * The budget is in real time (CPU time is real even when the game runs on simulated time).
+ * All methods are thread safe.
+ */
+public class CpuBudget {
+
+    /**
+     * How much unused budget can be saved up, in real time (the budget of this long is available at once).
+     */
+    private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * The number of cores the threads may use together (0 or less for no limit).
+     */
+    private final double cores;
+
+    /**
+     * The CPU time the threads may still use (negative when overdrawn), and the time it was computed.
+     */
+    private long balanceNanos;
+    private long refillNanos;
+
+    private long charges;
+    private long throttles;
+    private long throttledNanos;
+
+    /**
+     * @param cores - the number of cores the threads may use together (e.g. 0.5, or 0 or less for no limit).
+     */
+    public CpuBudget(double cores) {
+        this.cores = cores > 0 && THREADS.isThreadCpuTimeSupported() ? cores : 0;
+        this.balanceNanos = (long) (this.cores * WINDOW_NANOS);
+        this.refillNanos = System.nanoTime();
+    }
+
+    /**
+     * @return - true iff the budget limits the CPU time (it is configured and the JVM measures thread CPU time).
+     */
+    public boolean limited() {
+        return cores > 0;
+    }
+
+    /**
+     * Reports the CPU time a thread used, and waits while the threads are over the budget.
+     *
+     * @param cpuNanos - the CPU time used since the thread's previous report.
+     * @return - true iff the caller had to wait.
+     * @throws InterruptedException - if the thread was interrupted while waiting.
+     */
+    public boolean charge(long cpuNanos) throws InterruptedException {
+        if (!limited()) return false;
+        long waitNanos;
+        synchronized (this) {
+            refill();
+            charges++;
+            balanceNanos -= Math.max(0, cpuNanos);
+            if (balanceNanos >= 0) return false;
+            waitNanos = (long) (-balanceNanos / cores);
+            throttles++;
+            throttledNanos += waitNanos;
+        }
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+        return true;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        balanceNanos = Math.min((long) (cores * WINDOW_NANOS), balanceNanos + (long) ((now - refillNanos) * cores));
+        refillNanos = now;
+    }
+
+    /**
+     * @param threads - the threads to measure (null entries are skipped).
+     * @return - the total CPU time the threads used so far (0 if the JVM does not measure thread CPU time).
+     */
+    public static long cpuNanos(Thread... threads) {
+        long total = 0;
+        if (!THREADS.isThreadCpuTimeSupported()) return 0;
+        for (Thread thread : threads)
+            if (thread != null) total += Math.max(0, THREADS.getThreadCpuTime(thread.getId()));
+        return total;
+    }
+
+    public synchronized long charges() {
+        return charges;
+    }
+
+    /**
+     * @return - the number of times a thread waited because the budget was overdrawn.
+     */
+    public synchronized long throttles() {
+        return throttles;
+    }
+
+    public synchronized long throttledNanos() {
+        return throttledNanos;
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (!limited()) return "computer players cpu budget: unlimited";
+        return String.format("computer players cpu budget: %.2f cores, %d charges, throttled %d times for %.1f ms",
+                cores, charges, throttles, throttledNanos / 1e6);
+    }
+}
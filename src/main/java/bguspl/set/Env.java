@@ -8,11 +8,25 @@ public class Env {
     public final Config config;
     public final UserInterface ui;
     public final Util util;
+    public final Clock clock;
+    public final GameThreads threads;
+
+    /**
+     * The CPU time budget shared by all the computer players.
+     */
+    public final CpuBudget computerCpu;
 
     public Env(Logger logger, Config config, UserInterface ui, Util util) {
+        this(logger, config, ui, util, new SystemClock());
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, Clock clock) {
         this.logger = logger;
         this.config = config;
         this.ui = ui;
         this.util = util;
+        this.clock = clock;
+        this.threads = new GameThreads(logger);
+        this.computerCpu = new CpuBudget(config.computerCpuBudget);
     }
 }
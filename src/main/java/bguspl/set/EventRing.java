@@ -0,0 +1,307 @@
+package bguspl.set;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free queue of user interface events, with any number of producers (the game threads) and a single
+ * consumer (the thread that delivers the events to one subscriber). Publishing never blocks and never waits for the
+ * consumer: when the ring is full the overflow policy decides which event is dropped.
+ * An event published with a key (>= 0) is replaceable: it only matters until a newer event with the same key is
+ * delivered (e.g. the remaining time of the countdown), so it may be coalesced or dropped. Any other event must be
+ * delivered: if one has to be dropped, the ring asks the consumer to resync its subscriber from the game state once
+ * the events published before the drop were consumed (see takeResync).
+ * Each cell has a sequence number that tells whether it holds an event (so producers claim cells with one CAS and
+ * the consumer never reads a cell that is still being written). Events are kept in primitive arrays.
+ *
+ * @inv 0 <= tail - head <= capacity
+ */
+class EventRing {
+
+    /**
+     * The events (indexed by sequence number modulo the capacity). Cell i holds event s iff sequences[i] == s + 1,
+     * and is free for event s iff sequences[i] == s.
+     */
+    private final AtomicLongArray sequences;
+    private final int[] kinds;
+    private final int[] keys;
+    private final int[] firsts;
+    private final int[] seconds;
+    private final long[] values;
+    private final Object[] payloads;
+    private final long[] publishNanos;
+    private final int mask;
+
+    /**
+     * What to do with an event when the ring is full.
+     */
+    private final OverflowPolicy policy;
+
+    /**
+     * The sequence number of the next event to consume (advanced by the consumer, or by a producer that drops the
+     * oldest event).
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The sequence number of the next event to publish.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The number of events dropped because the ring was full (either the new event or the oldest one).
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * The number of events dropped because an equal event was already pending.
+     */
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * The tail when an event that must be delivered was last dropped: the consumer has to resync once it consumed
+     * the events before it.
+     */
+    private final AtomicLong resyncAt = new AtomicLong();
+
+    /**
+     * The value of resyncAt when the consumer last resynced (read and written by the consumer only).
+     */
+    private long resynced;
+
+    /**
+     * The number of resyncs taken by the consumer.
+     */
+    private final AtomicLong resyncs = new AtomicLong();
+
+    /**
+     * The key of an event that must be delivered.
+     */
+    static final int NO_KEY = -1;
+
+    /**
+     * What dropOldest did.
+     */
+    private static final int DROPPED_NONE = 0;
+    private static final int DROPPED_KEYED = 1;
+    private static final int DROPPED_UNKEYED = 2;
+    private static final int DROPPED_KEPT = 3;
+
+    /**
+     * @param capacity - the maximum number of pending events (rounded up to a power of 2).
+     * @param policy   - what to do with an event when the ring is full.
+     */
+    EventRing(int capacity, OverflowPolicy policy) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+            sequences.set(i, i);
+        kinds = new int[size];
+        keys = new int[size];
+        firsts = new int[size];
+        seconds = new int[size];
+        values = new long[size];
+        payloads = new Object[size];
+        publishNanos = new long[size];
+        mask = size - 1;
+        this.policy = policy;
+    }
+
+    /**
+     * Adds an event to the ring without blocking (producer side).
+     *
+     * @param key - the key of a replaceable event, or NO_KEY for an event that must be delivered.
+     * @return - true iff the event was added.
+     *
+     * @post - if the ring was full and the policy is DROP_OLDEST, the oldest pending event is dropped, unless it
+     *         must be delivered and the new event is replaceable (then the new event is dropped).
+     * @post - if an event that must be delivered was dropped, a resync is due.
+     */
+    boolean offer(int kind, int key, int first, int second, long value, Object payload, long nanos) {
+        if (policy == OverflowPolicy.COALESCE && key != NO_KEY && isNewestPending(kind, key, first, second, value)) {
+            coalesced.incrementAndGet();
+            return false;
+        }
+        long t = tail.get();
+        while (true) {
+            int cell = (int) t & mask;
+            long difference = sequences.get(cell) - t;
+            if (difference == 0) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    kinds[cell] = kind;
+                    keys[cell] = key;
+                    firsts[cell] = first;
+                    seconds[cell] = second;
+                    values[cell] = value;
+                    payloads[cell] = payload;
+                    publishNanos[cell] = nanos;
+                    sequences.set(cell, t + 1);
+                    return true;
+                }
+            } else if (difference < 0) { // full
+                int oldest = policy == OverflowPolicy.DROP_OLDEST ? dropOldest(key == NO_KEY) : DROPPED_NONE;
+                if (oldest == DROPPED_KEPT) { // the oldest event must be delivered, and the new one need not be
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                if (policy != OverflowPolicy.DROP_OLDEST) {
+                    dropped.incrementAndGet();
+                    if (key == NO_KEY) requestResync();
+                    return false;
+                }
+                // if the consumer wins the race for the oldest event there is room anyway
+                if (oldest != DROPPED_NONE) {
+                    dropped.incrementAndGet();
+                    if (oldest == DROPPED_UNKEYED) requestResync();
+                }
+            }
+            t = tail.get();
+        }
+    }
+
+    /**
+     * Drops the oldest pending event (producer side).
+     *
+     * @param any - true to drop it even if it must be delivered.
+     * @return - DROPPED_KEYED or DROPPED_UNKEYED if the oldest event was replaceable or had to be delivered and
+     *           was dropped, DROPPED_KEPT if it had to be delivered and any is false, and DROPPED_NONE if there was
+     *           no event to drop (the consumer took it).
+     */
+    private int dropOldest(boolean any) {
+        long h = head.get();
+        while (true) {
+            int cell = (int) h & mask;
+            long difference = sequences.get(cell) - (h + 1);
+            if (difference == 0) {
+                // the key is valid if the cell was not consumed meanwhile (it is not reused before that)
+                boolean keyed = keys[cell] != NO_KEY;
+                if (!keyed && !any) {
+                    if (head.get() == h) return DROPPED_KEPT;
+                } else if (head.compareAndSet(h, h + 1)) {
+                    payloads[cell] = null;
+                    sequences.set(cell, h + mask + 1);
+                    return keyed ? DROPPED_KEYED : DROPPED_UNKEYED;
+                }
+            } else if (difference < 0) {
+                return DROPPED_NONE;
+            }
+            h = head.get();
+        }
+    }
+
+    /**
+     * Asks the consumer to resync once it consumed the events published so far.
+     */
+    private void requestResync() {
+        long t = tail.get();
+        long at;
+        do {
+            at = resyncAt.get();
+        } while (at < t && !resyncAt.compareAndSet(at, t));
+    }
+
+    /**
+     * Checks whether the consumer has to resync its subscriber now (consumer side): an event that had to be
+     * delivered was dropped, and all the events published before it were consumed (so the game state the
+     * subscriber is resynced from is newer than any of them, and the events still pending are newer than the drop).
+     *
+     * @return - true iff the consumer has to resync (once per drop, or per run of drops).
+     */
+    boolean takeResync() {
+        long at = resyncAt.get();
+        if (at <= resynced || head.get() < at) return false;
+        resynced = at;
+        resyncs.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Removes the oldest event without blocking (consumer side).
+     *
+     * @param event - receives the event.
+     * @return - true iff there was an event.
+     */
+    boolean poll(Event event) {
+        long h = head.get();
+        while (true) {
+            int cell = (int) h & mask;
+            long difference = sequences.get(cell) - (h + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(h, h + 1)) {
+                    event.kind = kinds[cell];
+                    event.first = firsts[cell];
+                    event.second = seconds[cell];
+                    event.value = values[cell];
+                    event.payload = payloads[cell];
+                    event.publishNanos = publishNanos[cell];
+                    payloads[cell] = null;
+                    sequences.set(cell, h + mask + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false; // empty, or the next event is still being written
+            }
+            h = head.get();
+        }
+    }
+
+    /**
+     * @return - true iff the newest pending event with the given key is equal to the given one (so the new event
+     *           would not change what the subscriber shows). A cell that changes while it is being read, or is still
+     *           being written, ends the search, so a concurrent poll or offer only makes this publish a duplicate.
+     */
+    private boolean isNewestPending(int kind, int key, int first, int second, long value) {
+        for (long h = head.get(), s = tail.get() - 1; s >= h; s--) {
+            int cell = (int) s & mask;
+            if (sequences.get(cell) != s + 1) return false;
+            if (keys[cell] != key) continue;
+            boolean equal = kinds[cell] == kind && firsts[cell] == first && seconds[cell] == second
+                    && values[cell] == value;
+            return equal && sequences.get(cell) == s + 1;
+        }
+        return false;
+    }
+
+    /**
+     * @return - the number of pending events.
+     */
+    int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    /**
+     * @return - the number of events ever published (including the dropped oldest ones).
+     */
+    long published() {
+        return tail.get();
+    }
+
+    long dropped() {
+        return dropped.get();
+    }
+
+    long coalesced() {
+        return coalesced.get();
+    }
+
+    long resyncs() {
+        return resyncs.get();
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * A reusable holder of one event.
+     */
+    static class Event {
+        int kind;
+        int first;
+        int second;
+        long value;
+        Object payload;
+        long publishNanos;
+    }
+}
@@ -0,0 +1,258 @@
+package bguspl.set;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The JDK Flight Recorder events of the game, behind GameEvents. This is the only class that refers to jdk.jfr
+ * types: GameEvents loads it once, and disables all the events if it cannot be loaded (no jdk.jfr module, or no
+ * flight recorder). The events it begins are handed out as plain objects, so the game classes link without it.
+ */
+final class FlightRecorderEvents {
+
+    private static final EventType DEALER_ROUND = EventType.getEventType(DealerRoundEvent.class);
+    private static final EventType CARD_DEALT = EventType.getEventType(CardDealtEvent.class);
+    private static final EventType CARD_REMOVED = EventType.getEventType(CardRemovedEvent.class);
+    private static final EventType TOKEN = EventType.getEventType(TokenEvent.class);
+    private static final EventType CLAIM = EventType.getEventType(ClaimEvent.class);
+    private static final EventType FREEZE = EventType.getEventType(FreezeEvent.class);
+    private static final EventType RESHUFFLE = EventType.getEventType(ReshuffleEvent.class);
+    private static final EventType UI_DISPATCH = EventType.getEventType(UserInterfaceDispatchEvent.class);
+    private static final EventType MONITOR = EventType.getEventType(MonitorStatisticsEvent.class);
+
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * Loads the event types (the first call initializes the class, which fails with a LinkageError if the runtime
+     * has no flight recorder).
+     *
+     * @return - true.
+     */
+    static boolean load() {
+        return true;
+    }
+
+    static Object beginDealerRound() {
+        if (!DEALER_ROUND.isEnabled()) return null;
+        DealerRoundEvent event = new DealerRoundEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endDealerRound(Object round, int sets, boolean reshuffled, int deckSize) {
+        DealerRoundEvent event = (DealerRoundEvent) round;
+        event.sets = sets;
+        event.reshuffled = reshuffled;
+        event.deckSize = deckSize;
+        event.commit();
+    }
+
+    static void cardDealt(int card, int slot) {
+        if (!CARD_DEALT.isEnabled()) return;
+        CardDealtEvent event = new CardDealtEvent();
+        event.card = card;
+        event.slot = slot;
+        event.commit();
+    }
+
+    static void cardRemoved(int card, int slot) {
+        if (!CARD_REMOVED.isEnabled()) return;
+        CardRemovedEvent event = new CardRemovedEvent();
+        event.card = card;
+        event.slot = slot;
+        event.commit();
+    }
+
+    static void token(int player, int slot, boolean placed) {
+        if (!TOKEN.isEnabled()) return;
+        TokenEvent event = new TokenEvent();
+        event.player = player;
+        event.slot = slot;
+        event.placed = placed;
+        event.commit();
+    }
+
+    static void claim(int player, String verdict, long latencyNanos) {
+        if (!CLAIM.isEnabled()) return;
+        ClaimEvent event = new ClaimEvent();
+        event.player = player;
+        event.verdict = verdict;
+        event.latency = latencyNanos;
+        event.commit();
+    }
+
+    static Object beginFreeze(int player, boolean penalty) {
+        if (!FREEZE.isEnabled()) return null;
+        FreezeEvent event = new FreezeEvent();
+        event.player = player;
+        event.penalty = penalty;
+        event.begin();
+        return event;
+    }
+
+    static void end(Object event) {
+        ((Event) event).commit();
+    }
+
+    static void reshuffle(int cardsReturned, int deckSize) {
+        if (!RESHUFFLE.isEnabled()) return;
+        ReshuffleEvent event = new ReshuffleEvent();
+        event.cardsReturned = cardsReturned;
+        event.deckSize = deckSize;
+        event.commit();
+    }
+
+    static Object beginUserInterfaceDispatch(String subscriber, String update, long queuedNanos) {
+        if (!UI_DISPATCH.isEnabled()) return null;
+        UserInterfaceDispatchEvent event = new UserInterfaceDispatchEvent();
+        event.subscriber = subscriber;
+        event.update = update;
+        event.queued = queuedNanos;
+        event.begin();
+        return event;
+    }
+
+    static void monitor(MonitorStatistics statistics) {
+        if (!MONITOR.isEnabled()) return;
+        MonitorStatisticsEvent event = new MonitorStatisticsEvent();
+        event.monitor = statistics.name();
+        event.entries = statistics.entries();
+        event.contendedEntries = statistics.contendedEntries();
+        event.blocked = statistics.blockedNanos();
+        event.longestBlocked = statistics.longestBlockedNanos();
+        event.longestHold = statistics.longestHoldNanos();
+        event.commit();
+    }
+
+    @Name("bguspl.set.DealerRound")
+    @Label("Dealer Round")
+    @Category("Set Game")
+    @Description("The dealer deals the cards, waits for sets until the countdown ends, and takes the cards back")
+    @StackTrace(false)
+    static class DealerRoundEvent extends Event {
+        @Label("Sets")
+        int sets;
+        @Label("Reshuffled")
+        boolean reshuffled;
+        @Label("Deck Size")
+        int deckSize;
+    }
+
+    @Name("bguspl.set.CardDealt")
+    @Label("Card Dealt")
+    @Category("Set Game")
+    @StackTrace(false)
+    static class CardDealtEvent extends Event {
+        @Label("Card")
+        int card;
+        @Label("Slot")
+        int slot;
+    }
+
+    @Name("bguspl.set.CardRemoved")
+    @Label("Card Removed")
+    @Category("Set Game")
+    @StackTrace(false)
+    static class CardRemovedEvent extends Event {
+        @Label("Card")
+        int card;
+        @Label("Slot")
+        int slot;
+    }
+
+    @Name("bguspl.set.Token")
+    @Label("Token Toggled")
+    @Category("Set Game")
+    @StackTrace(false)
+    static class TokenEvent extends Event {
+        @Label("Player")
+        int player;
+        @Label("Slot")
+        int slot;
+        @Label("Placed")
+        boolean placed;
+    }
+
+    @Name("bguspl.set.Claim")
+    @Label("Claim")
+    @Category("Set Game")
+    @Description("A player claimed a set with three tokens")
+    @StackTrace(false)
+    static class ClaimEvent extends Event {
+        @Label("Player")
+        int player;
+        @Label("Verdict")
+        String verdict;
+        @Label("Latency")
+        @Description("From taking the key press that completed the claim until its verdict")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+    }
+
+    @Name("bguspl.set.Freeze")
+    @Label("Freeze")
+    @Category("Set Game")
+    @StackTrace(false)
+    static class FreezeEvent extends Event {
+        @Label("Player")
+        int player;
+        @Label("Penalty")
+        boolean penalty;
+    }
+
+    @Name("bguspl.set.Reshuffle")
+    @Label("Reshuffle")
+    @Category("Set Game")
+    @Description("The countdown ended and the dealer took the cards back to the deck")
+    @StackTrace(false)
+    static class ReshuffleEvent extends Event {
+        @Label("Cards Returned")
+        int cardsReturned;
+        @Label("Deck Size")
+        int deckSize;
+    }
+
+    @Name("bguspl.set.UserInterfaceDispatch")
+    @Label("User Interface Dispatch")
+    @Category("Set Game")
+    @StackTrace(false)
+    static class UserInterfaceDispatchEvent extends Event {
+        @Label("Subscriber")
+        String subscriber;
+        @Label("Update")
+        String update;
+        @Label("Queued")
+        @Timespan(Timespan.NANOSECONDS)
+        long queued;
+    }
+
+    @Name("bguspl.set.MonitorStatistics")
+    @Label("Monitor Statistics")
+    @Category("Set Game")
+    @Description("The contention of a game monitor since the game started")
+    @StackTrace(false)
+    static class MonitorStatisticsEvent extends Event {
+        @Label("Monitor")
+        String monitor;
+        @Label("Entries")
+        long entries;
+        @Label("Contended Entries")
+        long contendedEntries;
+        @Label("Blocked")
+        @Timespan(Timespan.NANOSECONDS)
+        long blocked;
+        @Label("Longest Blocked")
+        @Timespan(Timespan.NANOSECONDS)
+        long longestBlocked;
+        @Label("Longest Hold")
+        @Timespan(Timespan.NANOSECONDS)
+        long longestHold;
+    }
+}
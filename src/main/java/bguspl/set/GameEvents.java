@@ -0,0 +1,120 @@
+package bguspl.set;
+
+/**
+ * The JDK Flight Recorder events of the game (in the "Set Game" category), e.g. for
+ * java -XX:StartFlightRecording=filename=game.jfr ... and then jfr print --categories "Set Game" game.jfr.
+ * Each method checks whether its event is enabled in a running recording before it creates the event, so when
+ * nothing records them the game threads pay a field read and do not allocate. No event records a stack trace.
+ * The events are created by FlightRecorderEvents, and the events that span time are handed out as opaque handles,
+ * so neither this class nor its callers refer to jdk.jfr types: on a runtime without the jdk.jfr module (or with
+ * the flight recorder disabled) all the events are disabled.
+ */
+public final class GameEvents {
+
+    /**
+     * True iff the flight recorder can record the events.
+     */
+    private static final boolean AVAILABLE = available();
+
+    private GameEvents() {
+    }
+
+    private static boolean available() {
+        try {
+            return FlightRecorderEvents.load();
+        } catch (LinkageError e) { // no flight recorder in this JVM
+            return false;
+        }
+    }
+
+    /**
+     * Starts a dealer round (placing the cards, the turn until the countdown ends or no set is left, and taking
+     * the cards back).
+     *
+     * @return - the round event handle, or null if it is not recorded.
+     */
+    public static Object beginDealerRound() {
+        return AVAILABLE ? FlightRecorderEvents.beginDealerRound() : null;
+    }
+
+    /**
+     * Ends a dealer round.
+     *
+     * @param round      - the handle beginDealerRound returned.
+     * @param sets       - the number of sets collected in the round.
+     * @param reshuffled - true iff the round ended because of the turn timeout.
+     * @param deckSize   - the number of cards in the deck at the end of the round.
+     */
+    public static void endDealerRound(Object round, int sets, boolean reshuffled, int deckSize) {
+        if (round != null) FlightRecorderEvents.endDealerRound(round, sets, reshuffled, deckSize);
+    }
+
+    public static void cardDealt(int card, int slot) {
+        if (AVAILABLE) FlightRecorderEvents.cardDealt(card, slot);
+    }
+
+    public static void cardRemoved(int card, int slot) {
+        if (AVAILABLE) FlightRecorderEvents.cardRemoved(card, slot);
+    }
+
+    /**
+     * @param placed - true iff the token was placed (false if it was removed).
+     */
+    public static void token(int player, int slot, boolean placed) {
+        if (AVAILABLE) FlightRecorderEvents.token(player, slot, placed);
+    }
+
+    /**
+     * @param verdict      - the name of the verdict (legal, illegal or lost).
+     * @param latencyNanos - the time from taking the key press that completed the claim until its verdict.
+     */
+    public static void claim(int player, String verdict, long latencyNanos) {
+        if (AVAILABLE) FlightRecorderEvents.claim(player, verdict, latencyNanos);
+    }
+
+    /**
+     * Starts the freeze of a player after a claim.
+     *
+     * @param penalty - true iff the claim was illegal (false for a point).
+     * @return        - the freeze event handle, or null if it is not recorded.
+     */
+    public static Object beginFreeze(int player, boolean penalty) {
+        return AVAILABLE ? FlightRecorderEvents.beginFreeze(player, penalty) : null;
+    }
+
+    /**
+     * Ends a freeze (or a dispatch) started by beginFreeze (or beginUserInterfaceDispatch).
+     *
+     * @param event - the handle the begin method returned.
+     */
+    public static void end(Object event) {
+        if (event != null) FlightRecorderEvents.end(event);
+    }
+
+    /**
+     * @param cardsReturned - the number of cards taken back from the table to the deck.
+     * @param deckSize      - the number of cards in the deck after the reshuffle.
+     */
+    public static void reshuffle(int cardsReturned, int deckSize) {
+        if (AVAILABLE) FlightRecorderEvents.reshuffle(cardsReturned, deckSize);
+    }
+
+    /**
+     * Starts delivering a user interface update to a subscriber of the event bus.
+     *
+     * @param subscriber   - the subscriber name.
+     * @param update       - the user interface method.
+     * @param queuedNanos  - the time the update waited in the subscriber's queue.
+     * @return             - the dispatch event handle, or null if it is not recorded.
+     */
+    public static Object beginUserInterfaceDispatch(String subscriber, String update, long queuedNanos) {
+        return AVAILABLE ? FlightRecorderEvents.beginUserInterfaceDispatch(subscriber, update, queuedNanos) : null;
+    }
+
+    /**
+     * Records the contention statistics of a monitor so far.
+     */
+    public static void monitor(MonitorStatistics statistics) {
+        if (AVAILABLE) FlightRecorderEvents.monitor(statistics);
+    }
+}
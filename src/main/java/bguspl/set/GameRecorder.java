@@ -0,0 +1,14 @@
+package bguspl.set;
+
+/**
+ * Receives the statistics of every game that ends (e.g. to store them).
+ */
+public interface GameRecorder {
+
+    /**
+     * Called by the dealer thread once a game has ended.
+     *
+     * @param game - the statistics of the game.
+     */
+    void record(GameStatistics game);
+}
@@ -0,0 +1,205 @@
+package bguspl.set;
+
+import java.util.Arrays;
+
+/**
+ * The statistics of a single game, collected by the dealer while the game runs.
+ * All methods are thread safe (sets and penalties are recorded by the player threads). The contention of the
+ * statistics monitor among the player threads that record their claims is measured.
+ */
+public class GameStatistics {
+
+    /**
+     * The game clock time and the system time when the game started.
+     */
+    private final long startMillis;
+    private final long wallClockStartMillis;
+
+    /**
+     * The game clock time (relative to the game start) at which each set was found.
+     */
+    private long[] setTimes;
+    private int sets;
+
+    /**
+     * The number of penalties and the final score of each player.
+     */
+    private final int[] penalties;
+    private final int[] scores;
+
+    /**
+     * The number of claims (three tokens checked by the dealer) per latency, in power of two buckets of nanoseconds:
+     * bucket 0 holds 0ns, and bucket b holds 2^(b-1) to 2^b - 1 ns.
+     */
+    private final long[] claimLatencies = new long[Long.SIZE + 1];
+    private long claims;
+
+    private int reshuffles;
+    private int cardsLeft;
+    private long durationMillis;
+    private long wallClockMillis;
+
+    /**
+     * The contention of this object's monitor when the player threads record their sets, penalties and claims.
+     */
+    private final MonitorStatistics monitorStatistics = new MonitorStatistics("game statistics");
+
+    /**
+     * @param players              - the number of players in the game.
+     * @param startMillis          - the game clock time when the game started.
+     * @param wallClockStartMillis - the system time when the game started.
+     */
+    public GameStatistics(int players, long startMillis, long wallClockStartMillis) {
+        this(players, 32, startMillis, wallClockStartMillis);
+    }
+
+    /**
+     * @param players              - the number of players in the game.
+     * @param expectedSets         - the number of sets to make room for (more sets are still recorded).
+     * @param startMillis          - the game clock time when the game started.
+     * @param wallClockStartMillis - the system time when the game started.
+     */
+    public GameStatistics(int players, int expectedSets, long startMillis, long wallClockStartMillis) {
+        this.setTimes = new long[Math.max(1, expectedSets)];
+        this.startMillis = startMillis;
+        this.wallClockStartMillis = wallClockStartMillis;
+        this.penalties = new int[players];
+        this.scores = new int[players];
+    }
+
+    /**
+     * Records a legal set that was found.
+     *
+     * @param millis - the game clock time when it was found.
+     */
+    public void setFound(long millis) {
+        long requested = System.nanoTime();
+        synchronized (this) {
+            long entered = monitorStatistics.entered(requested);
+            if (sets == setTimes.length) setTimes = Arrays.copyOf(setTimes, sets * 2);
+            setTimes[sets++] = millis - startMillis;
+            monitorStatistics.exited(entered);
+        }
+    }
+
+    /**
+     * Records a penalty of a player.
+     *
+     * @param player - the player id.
+     */
+    public void penalty(int player) {
+        long requested = System.nanoTime();
+        synchronized (this) {
+            long entered = monitorStatistics.entered(requested);
+            penalties[player]++;
+            monitorStatistics.exited(entered);
+        }
+    }
+
+    /**
+     * Records a claim of a set that was checked by the dealer (legal or not).
+     *
+     * @param latencyNanos - the time from taking the key press that completed the claim until its verdict.
+     */
+    public void claimChecked(long latencyNanos) {
+        long requested = System.nanoTime();
+        synchronized (this) {
+            long entered = monitorStatistics.entered(requested);
+            claimLatencies[latencyNanos <= 0 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(latencyNanos)]++;
+            claims++;
+            monitorStatistics.exited(entered);
+        }
+    }
+
+    /**
+     * Records a reshuffle of the table due to the turn timeout.
+     */
+    public synchronized void reshuffled() {
+        reshuffles++;
+    }
+
+    /**
+     * Records the end of the game.
+     *
+     * @param millis          - the game clock time when it ended.
+     * @param wallClockMillis - the system time when it ended.
+     * @param cardsLeft       - the number of cards that were not collected in sets.
+     * @param scores          - the final score of each player.
+     */
+    public synchronized void finish(long millis, long wallClockMillis, int cardsLeft, int[] scores) {
+        this.durationMillis = millis - startMillis;
+        this.wallClockMillis = wallClockMillis - wallClockStartMillis;
+        this.cardsLeft = cardsLeft;
+        System.arraycopy(scores, 0, this.scores, 0, this.scores.length);
+    }
+
+    public synchronized long wallClockStartMillis() {
+        return wallClockStartMillis;
+    }
+
+    public synchronized long durationMillis() {
+        return durationMillis;
+    }
+
+    public synchronized long wallClockMillis() {
+        return wallClockMillis;
+    }
+
+    public synchronized int reshuffles() {
+        return reshuffles;
+    }
+
+    public synchronized int cardsLeft() {
+        return cardsLeft;
+    }
+
+    public synchronized int sets() {
+        return sets;
+    }
+
+    /**
+     * @param set - the index of the set (in the order they were found).
+     * @return - the game clock time (relative to the game start) at which the set was found.
+     */
+    public synchronized long setTime(int set) {
+        return setTimes[set];
+    }
+
+    /**
+     * @return - the contention statistics of the monitor of these statistics (entered by the player threads when
+     *           they record a set, a penalty or a claim).
+     */
+    public MonitorStatistics monitorStatistics() {
+        return monitorStatistics;
+    }
+
+    public synchronized long claims() {
+        return claims;
+    }
+
+    /**
+     * @param fraction - the fraction of the claims (e.g. 0.99).
+     * @return - an upper bound (in ns) of the latency of that fraction of the claims.
+     */
+    public synchronized long claimLatencyPercentile(double fraction) {
+        long target = (long) Math.ceil(claims * fraction);
+        long seen = 0;
+        for (int b = 0; b < claimLatencies.length; b++) {
+            seen += claimLatencies[b];
+            if (seen >= target && seen > 0) return b == 0 ? 0 : b == Long.SIZE ? Long.MAX_VALUE : (1L << b) - 1;
+        }
+        return 0;
+    }
+
+    public int players() {
+        return penalties.length;
+    }
+
+    public synchronized int penalties(int player) {
+        return penalties[player];
+    }
+
+    public synchronized int score(int player) {
+        return scores[player];
+    }
+}
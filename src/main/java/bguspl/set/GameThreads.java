@@ -0,0 +1,117 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Starts the threads of the game and stops them when it ends, so that no thread outlives its game.
+ * All methods are thread safe.
+ */
+public class GameThreads {
+
+    private final Logger logger;
+
+    /**
+     * The threads started and not yet known to have ended, in order of creation.
+     */
+    private final List<Thread> threads = new ArrayList<>();
+
+    private volatile long lastShutdownNanos;
+
+    public GameThreads(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Creates and starts a thread of the game.
+     *
+     * @param target - what the thread runs.
+     * @param name   - the thread name.
+     * @return - the started thread.
+     */
+    public Thread start(Runnable target, String name) {
+        ThreadLogger thread = new ThreadLogger(target, name, logger);
+        synchronized (threads) {
+            threads.add(thread);
+        }
+        thread.startWithLog();
+        return thread;
+    }
+
+    /**
+     * Interrupts the threads started so far in reverse order of creation (so a thread is interrupted before the
+     * thread that created it), and waits for them to end, but not longer than the given time.
+     * The threads should already have been told to stop (e.g. by Dealer.terminate): the interrupt only wakes the
+     * ones that sleep or wait. The calling thread is skipped, so a game thread can shut down the threads it started.
+     *
+     * @param timeoutMillis - the maximal time to wait for all the threads together.
+     * @return - true iff all the threads ended in time.
+     */
+    public boolean shutdown(long timeoutMillis) {
+        Thread[] snapshot;
+        synchronized (threads) {
+            snapshot = threads.toArray(new Thread[0]);
+        }
+        Thread self = Thread.currentThread();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        for (int i = snapshot.length - 1; i >= 0; i--)
+            if (snapshot[i] != self) snapshot[i].interrupt();
+
+        boolean interrupted = false;
+        List<Thread> alive = new ArrayList<>();
+        for (int i = snapshot.length - 1; i >= 0; i--) {
+            Thread thread = snapshot[i];
+            if (thread == self) continue;
+            long left = deadline - System.nanoTime();
+            if (left > 0 && !interrupted) try {
+                TimeUnit.NANOSECONDS.timedJoin(thread, left);
+            } catch (InterruptedException e) {
+                interrupted = true; // stop waiting, but still report
+            }
+            if (thread.isAlive()) alive.add(thread);
+        }
+
+        synchronized (threads) {
+            for (Thread thread : snapshot)
+                if (!thread.isAlive()) threads.remove(thread);
+        }
+        lastShutdownNanos = System.nanoTime() - start;
+        if (interrupted) self.interrupt();
+
+        double millis = lastShutdownNanos / 1e6;
+        if (alive.isEmpty()) {
+            logger.info(String.format("stopped %d threads in %.2f ms", snapshot.length - (contains(snapshot, self) ? 1 : 0), millis));
+            return true;
+        }
+        logger.severe(String.format("%d threads did not stop within %d ms (waited %.2f ms): %s", alive.size(), timeoutMillis,
+                millis, alive.stream().map(Thread::getName).collect(Collectors.joining(", "))));
+        return false;
+    }
+
+    /**
+     * @return - the time the last shutdown took, in nanoseconds.
+     */
+    public long lastShutdownNanos() {
+        return lastShutdownNanos;
+    }
+
+    /**
+     * @return - the number of threads started and not yet known to have ended.
+     */
+    public int size() {
+        synchronized (threads) {
+            return threads.size();
+        }
+    }
+
+    private static boolean contains(Thread[] threads, Thread thread) {
+        for (Thread t : threads)
+            if (t == thread) return true;
+        return false;
+    }
+}
@@ -26,6 +26,7 @@ class InputManager extends KeyAdapter {
         for (int player = 0; player < config.players; ++player)
             for (int i = 0; i < config.playerKeys(player).length; i++) {
                 int keyCode = config.playerKeys(player)[i];
+                if (keyCode == 0) continue; // no key for this slot
                 if (keyCode >= keyMap.length) reallocArrays(keyCode); // enlarge the array for higher key codes
                 keyMap[keyCode] = player + 1; // 1 for first player and 2 for second player
                 keyToSlot[keyCode] = i;
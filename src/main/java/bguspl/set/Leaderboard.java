@@ -0,0 +1,158 @@
+package bguspl.set;
+
+import java.util.Arrays;
+
+/**
+ * The players ranked by score (highest first, and by id among equal scores), maintained incrementally: a score change
+ * updates a tournament tree in O(log n) without allocating, and the top k players are read in O(k log n), so games
+ * with hundreds of players never sort or scan all of them.
+ * All methods are thread safe.
+ *
+ * @inv tree[node] is the best ranked player among the players under the node (NOBODY if there are none)
+ */
+public class Leaderboard {
+
+    private static final int NOBODY = -1;
+
+    private final int[] scores;
+
+    /**
+     * The tournament tree: node 1 is the root, the children of node i are 2i and 2i + 1, and the leaves start at
+     * leaves (the leaf of player p is leaves + p).
+     */
+    private final int[] tree;
+    private final int leaves;
+
+    /**
+     * The frontier of the best-first walk in top (a binary heap of tree nodes), kept between calls.
+     */
+    private int[] frontier;
+
+    /**
+     * @param players - the number of players (all start with a score of 0).
+     */
+    public Leaderboard(int players) {
+        scores = new int[players];
+        leaves = Integer.highestOneBit(Math.max(1, players - 1)) << 1;
+        tree = new int[2 * leaves];
+        Arrays.fill(tree, NOBODY);
+        for (int player = 0; player < players; player++)
+            tree[leaves + player] = player;
+        for (int node = leaves - 1; node >= 1; node--)
+            tree[node] = better(tree[2 * node], tree[2 * node + 1]);
+        frontier = new int[16];
+    }
+
+    private int better(int first, int second) {
+        if (first == NOBODY) return second;
+        if (second == NOBODY) return first;
+        if (scores[first] != scores[second]) return scores[first] > scores[second] ? first : second;
+        return Math.min(first, second);
+    }
+
+    /**
+     * Sets the score of a player and updates the ranking.
+     *
+     * @param player - the player id.
+     * @param score  - the new score.
+     */
+    public synchronized void setScore(int player, int score) {
+        scores[player] = score;
+        for (int node = (leaves + player) / 2; node >= 1; node /= 2)
+            tree[node] = better(tree[2 * node], tree[2 * node + 1]);
+    }
+
+    public synchronized int score(int player) {
+        return scores[player];
+    }
+
+    public int players() {
+        return scores.length;
+    }
+
+    /**
+     * @return - the score of the leading player(s).
+     */
+    public synchronized int topScore() {
+        return scores.length == 0 ? 0 : scores[tree[1]];
+    }
+
+    /**
+     * Finds the best ranked players.
+     *
+     * @param players - where to put the players, best first (as many as fit).
+     * @return        - the number of players put.
+     */
+    public synchronized int top(int[] players) {
+        return top(players, Integer.MIN_VALUE);
+    }
+
+    /**
+     * @return - the players with the top score (the winners), by id.
+     */
+    public synchronized int[] winners() {
+        if (scores.length == 0) return new int[0];
+        int[] winners = new int[scores.length];
+        return Arrays.copyOf(winners, top(winners, topScore()));
+    }
+
+    /**
+     * @return - the score of each player.
+     */
+    public synchronized int[] scores() {
+        return scores.clone();
+    }
+
+    /**
+     * Walks the tree best first: the frontier holds subtrees ordered by their best player, so the leaf at its top
+     * is the best player not yet taken.
+     */
+    private int top(int[] players, int minScore) {
+        if (scores.length == 0) return 0;
+        int count = 0;
+        int size = push(0, 1);
+        while (size > 0 && count < players.length) {
+            int node = frontier[0];
+            frontier[0] = frontier[--size];
+            siftDown(size);
+            int player = tree[node];
+            if (scores[player] < minScore) break;
+            if (node >= leaves) {
+                players[count++] = player;
+            } else {
+                frontier = ensureCapacity(frontier, size + 2);
+                if (tree[2 * node] != NOBODY) size = push(size, 2 * node);
+                if (tree[2 * node + 1] != NOBODY) size = push(size, 2 * node + 1);
+            }
+        }
+        return count;
+    }
+
+    private static int[] ensureCapacity(int[] array, int length) {
+        return array.length >= length ? array : Arrays.copyOf(array, Math.max(length, array.length * 2));
+    }
+
+    private int push(int size, int node) {
+        int i = size;
+        while (i > 0 && tree[node] == better(tree[node], tree[frontier[(i - 1) / 2]])) {
+            frontier[i] = frontier[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        frontier[i] = node;
+        return size + 1;
+    }
+
+    private void siftDown(int size) {
+        if (size == 0) return;
+        int node = frontier[0], i = 0;
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && better(tree[frontier[child + 1]], tree[frontier[child]]) == tree[frontier[child + 1]])
+                child++;
+            if (better(tree[node], tree[frontier[child]]) == tree[node]) break;
+            frontier[i] = frontier[child];
+            i = child;
+        }
+        frontier[i] = node;
+    }
+}
@@ -6,6 +6,7 @@ import bguspl.set.ex.Table;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -18,16 +19,20 @@ import java.util.logging.*;
 public class Main {
 
     private static Dealer dealer;
+    private static Config config;
     private static Thread mainThread;
 
     private static boolean xButtonPressed = false;
     private static Logger logger;
+    private static UserInterfaceCounting counting;
 
     public static void xButtonPressed() throws InterruptedException {
         if (logger != null) logger.severe("exit button pressed");
         xButtonPressed = true;
         if (dealer != null) dealer.terminate();
-        mainThread.join();
+        // the game threads get the shutdown timeout, and the main thread gets as much on top of it
+        if (config != null) mainThread.join(2 * config.shutdownTimeoutMillis);
+        else mainThread.join();
     }
 
     /**
@@ -42,39 +47,74 @@ public class Main {
         // create the game environment objects
         logger = initLogger();
         ThreadLogger.logStart(logger, Thread.currentThread().getName());
-        Config config = new Config(logger, "config.properties");
-        Util util = new UtilImpl(config);
+        config = new Config(logger, "config.properties");
+        UtilImpl util = new UtilImpl(config, loadSetTables(config));
 
         Player[] players = new Player[config.players];
-        UserInterface ui = null;
-        try {
-            ui = new UserInterfaceSwing(logger, config, players);
-        } catch (UnsupportedOperationException | IllegalArgumentException e) {
-            logger.severe("error creating swing user interface: " + e.getMessage());
-            logger.severe("will try to run without user interface");
-            if (config.humanPlayers > 0)
-                logger.severe("warning: running with human players with no user interface");
-        }
-        ui = new UserInterfaceDecorator(logger, util, ui);
+        // the game publishes its updates to the user interface, the log and the counters without waiting for them
+        UserInterfaceEventBus ui = new UserInterfaceEventBus(logger, config.shutdownTimeoutMillis);
+        ui.subscribe("ui", createUserInterface(config, players, util), config.eventQueueCapacity, config.eventOverflowPolicy);
+        if (config.logUserInterface)
+            ui.subscribe("log", new UserInterfaceDecorator(logger, util, new UserInterfaceHeadless()),
+                    config.eventQueueCapacity, config.eventOverflowPolicy);
 
-        Env env = new Env(logger, config, ui, util);
+        Clock clock = config.virtualTime ? new VirtualClock() : new SystemClock();
+        Env env = new Env(logger, config, ui, util, clock);
 
         // create the game entities
         Table table = new Table(env);
         dealer = new Dealer(env, table, players);
         for (int i = 0; i < players.length; i++)
             players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
+        // a subscriber that missed card, token or score updates is shown the current table and scores instead
+        ui.setStateSource(target -> {
+            table.replay(target);
+            for (Player player : players)
+                target.setScore(player.id, player.score());
+        });
+
+        StatisticsWriter statistics = null;
+        if (!config.statisticsFile.isEmpty()) try {
+            statistics = new StatisticsWriter(Paths.get(config.statisticsFile), config.statisticsBlockGames);
+            dealer.addRecorder(statistics);
+        } catch (IOException e) {
+            logger.severe("cannot open statistics file " + config.statisticsFile + ": " + e.getMessage());
+        }
+
+        TournamentStore tournament = null;
+        if (!config.tournamentDirectory.isEmpty()) try {
+            tournament = new TournamentStore(Paths.get(config.tournamentDirectory));
+            dealer.addRecorder(tournament);
+        } catch (IOException e) {
+            logger.severe("cannot open tournament store " + config.tournamentDirectory + ": " + e.getMessage());
+        }
 
         // start the dealer thread
-        ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", logger);
-        dealerThread.startWithLog();
+        Thread dealerThread = env.threads.start(dealer, "dealer");
 
         try {
             // shutdown stuff
-            dealerThread.joinWithLog();
+            dealerThread.join();
             if (!xButtonPressed && config.endGamePauseMillies > 0) Thread.sleep(config.endGamePauseMillies);
         } catch (InterruptedException ignored) {
         } finally {
+            dealer.terminate();
+            env.threads.shutdown(config.shutdownTimeoutMillis);
+            logger.info(util.setCache().toString());
+            if (counting != null) logger.info(counting.toString());
+            logger.info(ui.toString());
+            logger.info(env.computerCpu.toString());
+            if (statistics != null) try {
+                statistics.close();
+            } catch (IOException e) {
+                logger.severe("cannot write statistics file " + config.statisticsFile + ": " + e.getMessage());
+            }
+            if (tournament != null) try {
+                logger.info(tournament.toString());
+                tournament.close();
+            } catch (IOException e) {
+                logger.severe("cannot write tournament store " + config.tournamentDirectory + ": " + e.getMessage());
+            }
             logger.severe("thanks for playing... it was fun!");
             System.out.println("Thanks for playing... it was fun!");
             ThreadLogger.logStop(logger, Thread.currentThread().getName());
@@ -83,6 +123,46 @@ public class Main {
         }
     }
 
+    /**
+     * Maps the set tables file of the configuration (generating it if needed).
+     *
+     * @return - the tables, or null if there is no tables file or it cannot be used.
+     */
+    private static SetTables loadSetTables(Config config) {
+        if (config.setTablesFile.isEmpty() || config.featureSize != 3) return null;
+        try {
+            SetTables tables = SetTables.openOrGenerate(Paths.get(config.setTablesFile), config);
+            logger.info(tables.toString());
+            return tables;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warning("cannot use set tables file " + config.setTablesFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static UserInterface createUserInterface(Config config, Player[] players, Util util) {
+        switch (config.userInterface) {
+            case "headless":
+                return new UserInterfaceHeadless();
+            case "counting":
+                return counting = new UserInterfaceCounting();
+            case "swing":
+                break;
+            default:
+                logger.severe("unknown user interface " + config.userInterface + ", using swing");
+        }
+        try {
+            return new UserInterfaceSwing(logger, config, players, util);
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            logger.severe("error creating swing user interface: " + e.getMessage());
+            logger.severe("will try to run without user interface");
+            if (config.humanPlayers > 0)
+                logger.severe("warning: running with human players with no user interface");
+            System.out.println("running without a user interface. Check logs.");
+            return new UserInterfaceHeadless();
+        }
+    }
+
     private static Logger initLogger() {
 
         //just to make our log file nicer :)
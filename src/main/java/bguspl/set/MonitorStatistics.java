@@ -0,0 +1,104 @@
+package bguspl.set;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The contention statistics of a monitor (or of a group of similar monitors, e.g. the slot monitors of the table):
+ * how many times it was entered, how long the threads were blocked entering it, and the longest time it was held.
+ * The thread that enters the monitor calls entered right after entering it and exited right before leaving it (or
+ * before waiting on it), which costs two clock reads and a few uncontended atomic additions.
+ * All methods are thread safe.
+ */
+public class MonitorStatistics {
+
+    private final String name;
+    private final LongAdder entries = new LongAdder();
+    private final LongAdder contendedEntries = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+    private final AtomicLong longestBlockedNanos = new AtomicLong();
+    private final AtomicLong longestHoldNanos = new AtomicLong();
+
+    /**
+     * The shortest time a thread must wait to enter the monitor for the entry to count as contended (a clock read
+     * and an uncontended monitor entry take a few tens of nanoseconds).
+     */
+    private static final long CONTENDED_NANOS = 1_000;
+
+    /**
+     * @param name - the monitor name (for the log and the flight recorder).
+     */
+    public MonitorStatistics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records an entry to the monitor.
+     *
+     * @param requestNanos - System.nanoTime() right before the thread tried to enter the monitor.
+     * @return             - System.nanoTime() now (pass it to exited).
+     */
+    public long entered(long requestNanos) {
+        long now = System.nanoTime();
+        long blocked = now - requestNanos;
+        entries.increment();
+        if (blocked >= CONTENDED_NANOS) {
+            contendedEntries.increment();
+            blockedNanos.add(blocked);
+            max(longestBlockedNanos, blocked);
+        }
+        return now;
+    }
+
+    /**
+     * Records that the thread is about to leave (or wait on) the monitor.
+     *
+     * @param enteredNanos - the value entered returned (or System.nanoTime() when the thread woke up from a wait).
+     */
+    public void exited(long enteredNanos) {
+        max(longestHoldNanos, System.nanoTime() - enteredNanos);
+    }
+
+    private static void max(AtomicLong max, long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value))
+            current = max.get();
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public long entries() {
+        return entries.sum();
+    }
+
+    /**
+     * @return - the number of entries that waited at least a microsecond for the monitor.
+     */
+    public long contendedEntries() {
+        return contendedEntries.sum();
+    }
+
+    /**
+     * @return - the total time the contended entries waited for the monitor.
+     */
+    public long blockedNanos() {
+        return blockedNanos.sum();
+    }
+
+    public long longestBlockedNanos() {
+        return longestBlockedNanos.get();
+    }
+
+    public long longestHoldNanos() {
+        return longestHoldNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("monitor %s: %d entries, %d contended, blocked %.3f ms (longest %.1f us), longest hold %.1f us",
+                name, entries(), contendedEntries(), blockedNanos() / 1e6, longestBlockedNanos() / 1e3,
+                longestHoldNanos() / 1e3);
+    }
+}
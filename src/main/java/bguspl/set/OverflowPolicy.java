@@ -0,0 +1,38 @@
+package bguspl.set;
+
+/**
+ * What a bounded, non-blocking buffer does with a new element when it is already full.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Keep the buffered elements and discard the new one.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Discard the oldest buffered element to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Discard the new element if it would not change anything (an equal one is already buffered, and for the user
+     * interface events, it is the newest buffered update of the same timer), otherwise behave like DROP_NEWEST.
+     */
+    COALESCE;
+
+    /**
+     * Parses a policy name from the configuration file (e.g. "DropOldest", "drop_oldest" or "DROP-OLDEST").
+     *
+     * @param name - the policy name.
+     * @return - the matching policy.
+     * @throws IllegalArgumentException - if no policy matches the name.
+     */
+    public static OverflowPolicy parse(String name) {
+        String normalized = name.trim().replaceAll("[-_ ]", "");
+        for (OverflowPolicy policy : values())
+            if (policy.name().replace("_", "").equalsIgnoreCase(normalized))
+                return policy;
+        throw new IllegalArgumentException("unknown overflow policy: " + name);
+    }
+}
@@ -0,0 +1,75 @@
+package bguspl.set;
+
+import java.util.Arrays;
+
+/**
+ * Checks triples of cards one at a time (runs on any Java version).
+ * Three cards are a legal set iff each feature is either the same on all of them or different on all of them.
+ */
+class ScalarSetValidator implements SetValidator {
+
+    private final int featureCount;
+
+    /**
+     * When there are 3 values per feature: the features of each card, 3 bits per feature. A feature is the same on
+     * three cards or different on all of them iff the sum of its values is divisible by 3 (0, 3 or 6), so the
+     * three cards are checked with one addition for all the features.
+     */
+    private final int[] packed;
+
+    /**
+     * Otherwise: one bit per feature value, for each card and feature. A feature is the same on all three cards
+     * iff the OR of their bits has 1 bit set, and different on all of them iff it has 3 bits set.
+     */
+    private final int[] featureBits;
+
+    ScalarSetValidator(Config config) {
+        featureCount = config.featureCount;
+        boolean mod3 = config.featureSize == 3;
+        packed = mod3 ? packFeatures(config) : null;
+        featureBits = mod3 ? null : new int[config.deckSize * featureCount];
+        if (!mod3) {
+            for (int card = 0; card < config.deckSize; card++)
+                for (int f = featureCount - 1, value = card; f >= 0; f--, value /= config.featureSize)
+                    featureBits[card * featureCount + f] = 1 << value % config.featureSize;
+        }
+    }
+
+    /**
+     * @return - the features of each card, 3 bits per feature (a card id written in base 3, with 3 bits per digit).
+     */
+    static int[] packFeatures(Config config) {
+        int[] packed = new int[config.deckSize];
+        for (int card = 0; card < config.deckSize; card++)
+            for (int f = 0, value = card; f < config.featureCount; f++, value /= 3)
+                packed[card] |= value % 3 << 3 * f;
+        return packed;
+    }
+
+    /**
+     * @return - true iff every 3 bit field of the sum of three packed cards is 0, 3 or 6.
+     */
+    static boolean divisibleBy3(int sum, int featureCount) {
+        for (int f = 0; f < featureCount; f++)
+            if ((0b1001001 >>> (sum >>> 3 * f & 7) & 1) == 0) return false;
+        return true;
+    }
+
+    @Override
+    public void testSets(int[] first, int[] second, int[] third, int count, long[] legal) {
+        Arrays.fill(legal, 0, (count + Long.SIZE - 1) / Long.SIZE, 0L);
+        for (int i = 0; i < count; i++)
+            if (packed != null ? divisibleBy3(packed[first[i]] + packed[second[i]] + packed[third[i]], featureCount)
+                    : testSet(first[i], second[i], third[i]))
+                legal[i >>> 6] |= 1L << i;
+    }
+
+    private boolean testSet(int a, int b, int c) {
+        for (int f = 0; f < featureCount; f++) {
+            int bits = Integer.bitCount(featureBits[a * featureCount + f] | featureBits[b * featureCount + f]
+                    | featureBits[c * featureCount + f]);
+            if (bits == 2) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,130 @@
+package bguspl.set;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded cache of "which legal set does this pool of cards contain", keyed by the pool as a bitmask of card ids
+ * (so the 81 cards of the standard deck fit in two longs). The least recently used pools are evicted first.
+ * All methods are thread safe.
+ */
+public class SetCache {
+
+    /**
+     * The cached value of a pool that contains no legal set.
+     */
+    private static final int[] NO_SET = new int[0];
+
+    /**
+     * The cached pools (in access order) and the first legal set in each of them.
+     */
+    private final LinkedHashMap<Pool, int[]> entries;
+
+    /**
+     * A reusable key for lookups, so a cache hit does not allocate.
+     */
+    private final Pool probe;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param capacity - the maximum number of cached pools.
+     * @param deckSize - the number of cards in the deck.
+     */
+    public SetCache(int capacity, int deckSize) {
+        this.entries = new LinkedHashMap<Pool, int[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Pool, int[]> eldest) {
+                if (size() <= capacity) return false;
+                evictions++;
+                return true;
+            }
+        };
+        this.probe = new Pool(new long[(deckSize + Long.SIZE - 1) / Long.SIZE]);
+    }
+
+    /**
+     * Looks a pool of cards up in the cache.
+     *
+     * @param cards - the pool of cards.
+     * @return - the cached result (a legal set in the pool, or an empty array if there is none), or null if the
+     *           pool is not cached.
+     */
+    public synchronized int[] get(List<Integer> cards) {
+        probe.set(cards);
+        int[] set = entries.get(probe);
+        if (set == null) misses++;
+        else hits++;
+        return set;
+    }
+
+    /**
+     * Caches the result for a pool of cards.
+     *
+     * @param cards - the pool of cards.
+     * @param set   - a legal set in the pool, or null if there is none.
+     */
+    public synchronized void put(List<Integer> cards, int[] set) {
+        probe.set(cards);
+        entries.put(new Pool(probe.bits.clone()), set == null ? NO_SET : set);
+    }
+
+    /**
+     * @param set - a value returned by get.
+     * @return - true iff the value means the pool contains no legal set.
+     */
+    public static boolean isNoSet(int[] set) {
+        return set.length == 0;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "set cache: " + entries.size() + " pools, " + hits + " hits, " + misses + " misses, " + evictions + " evictions";
+    }
+
+    /**
+     * A pool of cards as a bitmask of card ids.
+     */
+    private static class Pool {
+
+        private final long[] bits;
+
+        private Pool(long[] bits) {
+            this.bits = bits;
+        }
+
+        private void set(List<Integer> cards) {
+            Arrays.fill(bits, 0);
+            for (int i = 0; i < cards.size(); i++) {
+                int card = cards.get(i);
+                bits[card / Long.SIZE] |= 1L << card;
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Pool && Arrays.equals(bits, ((Pool) o).bits);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(bits);
+        }
+    }
+}
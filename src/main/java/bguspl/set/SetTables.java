@@ -0,0 +1,286 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * A precomputed table of the sets of a deck with 3 values per feature, in a file that is memory-mapped read-only, so
+ * all the games of a process (and all the processes on a machine) share the same pages instead of each building
+ * its own copy on the heap. The completion table holds, for each pair of cards, the only card that makes a legal
+ * set with them.
+ * <p>
+ * File layout (all numbers big endian):
+ * <pre>
+ * file := MAGIC VERSION featureSize featureCount deckSize (padding to HEADER_BYTES)
+ *         completion[deckSize * deckSize] (unsigned shorts)
+ * </pre>
+ */
+public class SetTables {
+
+    static final long MAGIC = 0x5345545441424c53L; // "SETTABLS"
+    static final int VERSION = 2; // version 1 also held an incidence table that nothing read
+    static final int HEADER_BYTES = 32;
+
+    /**
+     * The largest deck the tables support: card ids are stored as unsigned shorts, and the whole file is mapped
+     * as a single buffer (3^9 cards, a 775 MB file).
+     */
+    static final int MAX_DECK_SIZE = 19683;
+
+    /**
+     * Where main stores its lookups, so they are not optimized away.
+     */
+    private static volatile long sink;
+
+    private final Path path;
+    private final int deckSize;
+    private final ShortBuffer completion;
+    private final long bytes;
+    private final long loadNanos;
+    private final boolean generated;
+
+    private SetTables(Path path, int deckSize, MappedByteBuffer file, long loadNanos, boolean generated) {
+        this.path = path.toAbsolutePath();
+        this.deckSize = deckSize;
+        this.bytes = file.capacity();
+        file.position(HEADER_BYTES);
+        this.completion = file.slice().asShortBuffer();
+        this.loadNanos = loadNanos;
+        this.generated = generated;
+    }
+
+    /**
+     * Maps a tables file, generating it first if it does not exist.
+     *
+     * @param path   - the tables file.
+     * @param config - the game configuration (the tables must match its features).
+     * @return - the mapped tables.
+     * @throws IOException - if the file cannot be generated or read, or was built for other features.
+     */
+    public static SetTables openOrGenerate(Path path, Config config) throws IOException {
+        long start = System.nanoTime();
+        boolean generated = false;
+        if (!Files.exists(path)) {
+            generate(path, config.featureSize, config.featureCount);
+            generated = true;
+        }
+        return map(path, config.featureSize, config.featureCount, start, generated);
+    }
+
+    /**
+     * Maps an existing tables file.
+     *
+     * @param path   - the tables file.
+     * @param config - the game configuration (the tables must match its features).
+     * @return - the mapped tables.
+     * @throws IOException - if the file cannot be read, is not a tables file or was built for other features.
+     */
+    public static SetTables open(Path path, Config config) throws IOException {
+        return map(path, config.featureSize, config.featureCount, System.nanoTime(), false);
+    }
+
+    private static SetTables map(Path path, int featureSize, int featureCount, long start, boolean generated) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) throw new IOException(path + " is not a set tables file");
+            MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (file.getLong(0) != MAGIC) throw new IOException(path + " is not a set tables file");
+            if (file.getInt(8) != VERSION)
+                throw new IOException(path + " has version " + file.getInt(8) + ", expected " + VERSION);
+            int deckSize = file.getInt(20);
+            if (file.getInt(12) != featureSize || file.getInt(16) != featureCount)
+                throw new IOException(path + " was built for " + file.getInt(16) + " features of " + file.getInt(12)
+                        + " values, expected " + featureCount + " features of " + featureSize + " values");
+            if (channel.size() != fileBytes(deckSize)) throw new IOException(path + " is truncated");
+            return new SetTables(path, deckSize, file, System.nanoTime() - start, generated);
+        }
+    }
+
+    /**
+     * Builds the table of a deck into a file. The table is written to a temporary file in the same directory
+     * and then moved in place, so other processes never map a partial file.
+     *
+     * @param path         - the tables file (replaced if it exists).
+     * @param featureSize  - the number of values per feature (must be 3).
+     * @param featureCount - the number of features.
+     * @throws IOException - if the file cannot be written.
+     */
+    public static void generate(Path path, int featureSize, int featureCount) throws IOException {
+        if (featureSize != 3) throw new IllegalArgumentException("set tables need 3 values per feature, not " + featureSize);
+        int deckSize = (int) Math.pow(featureSize, featureCount);
+        if (deckSize > MAX_DECK_SIZE) throw new IllegalArgumentException("set tables support up to " + MAX_DECK_SIZE + " cards");
+
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileBytes(deckSize));
+                file.putLong(MAGIC).putInt(VERSION).putInt(featureSize).putInt(featureCount).putInt(deckSize);
+                file.position(HEADER_BYTES);
+                ShortBuffer completion = file.slice().asShortBuffer();
+
+                int[] powers = new int[featureCount];
+                for (int f = 0, power = 1; f < featureCount; f++, power *= 3)
+                    powers[f] = power;
+                for (int first = 0; first < deckSize; first++)
+                    for (int second = 0; second < deckSize; second++)
+                        completion.put((short) third(first, second, powers));
+                file.force();
+            }
+            try {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @return - the card that makes a legal set with two cards: each of its features (base 3 digits) is the one
+     *           that makes the sum of the three divisible by 3.
+     */
+    private static int third(int first, int second, int[] powers) {
+        int third = 0;
+        for (int power : powers)
+            third += (6 - first / power % 3 - second / power % 3) % 3 * power;
+        return third;
+    }
+
+    private static long fileBytes(int deckSize) {
+        return HEADER_BYTES + (long) deckSize * deckSize * Short.BYTES;
+    }
+
+    /**
+     * @param first  - a card.
+     * @param second - another card.
+     * @return - the card that makes a legal set with the two cards (the same card if they are equal).
+     */
+    public int third(int first, int second) {
+        return completion.get(first * deckSize + second) & 0xffff;
+    }
+
+    /**
+     * @return - the number of cards in the deck.
+     */
+    public int deckSize() {
+        return deckSize;
+    }
+
+    /**
+     * @return - the size of the mapped file in bytes.
+     */
+    public long bytes() {
+        return bytes;
+    }
+
+    /**
+     * @return - how much of the file is resident in this process (the Rss of its read-only mappings in
+     *           /proc/self/smaps), in bytes, or -1 if the system does not report it. The pages become resident as
+     *           lookups touch them.
+     */
+    public long residentBytes() {
+        return residentBytes(path);
+    }
+
+    private static long residentBytes(Path path) {
+        Path smaps = Paths.get("/proc/self/smaps");
+        if (!Files.isReadable(smaps)) return -1;
+        String name = path.toString();
+        long kilobytes = 0;
+        boolean inMapping = false;
+        try {
+            for (String line : Files.readAllLines(smaps)) {
+                // each mapping starts with a line of its address range and permissions, and ends with the file's path
+                // (the writable mapping generate used may still be around until it is collected)
+                if (line.matches("[0-9a-f]+-[0-9a-f]+ .*"))
+                    inMapping = line.endsWith(" " + name) && line.split(" ")[1].startsWith("r--");
+                else if (inMapping && line.startsWith("Rss:"))
+                    kilobytes += Long.parseLong(line.replaceAll("[^0-9]", ""));
+            }
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+        return kilobytes * 1024;
+    }
+
+    /**
+     * @return - the time it took to generate (if needed) and map the file, in nanoseconds.
+     */
+    public long loadNanos() {
+        return loadNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("set tables: %d cards, %d KB file, %s in %.2f ms", deckSize, bytes / 1024,
+                generated ? "generated and mapped" : "mapped", loadNanos / 1e6);
+    }
+
+    /**
+     * Generates the tables files of decks with 3 values per feature, and reports how long it takes to generate
+     * and map them, how much of each file becomes resident as games look sets up, and how long building the same
+     * table on the heap takes.
+     *
+     * @param args - the directory to write the files to, and the numbers of features (e.g. "tables 4 5 6 7").
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: SetTables <directory> <feature count>...");
+            return;
+        }
+        System.out.println("features  cards    file KB  generate ms  map ms  rss KB mapped  rss KB 1000 deals  rss KB all"
+                + "  heap ms");
+        for (int i = 1; i < args.length; i++) {
+            int featureCount = Integer.parseInt(args[i]);
+            Path path = Paths.get(args[0], "sets-3x" + featureCount + ".tables");
+
+            long start = System.nanoTime();
+            generate(path, 3, featureCount);
+            long generateNanos = System.nanoTime() - start;
+            SetTables tables = map(path, 3, featureCount, System.nanoTime(), false);
+            long mapped = tables.residentBytes();
+
+            // the lookups of 1000 deals of 12 random cards, then a lookup in every page
+            Random random = new Random(0);
+            long sum = 0;
+            for (int deal = 0; deal < 1000; deal++) {
+                int[] cards = random.ints(12, 0, tables.deckSize).toArray();
+                for (int first = 0; first < cards.length; first++)
+                    for (int second = first + 1; second < cards.length; second++)
+                        sum += tables.third(cards[first], cards[second]);
+            }
+            long dealt = tables.residentBytes();
+            for (int index = 0; index < tables.completion.capacity(); index += 2048)
+                sum += tables.completion.get(index);
+            long touched = tables.residentBytes();
+
+            // the same table built on the heap (what each game would do without the file)
+            start = System.nanoTime();
+            ByteBuffer heap = ByteBuffer.allocate((int) (tables.bytes - HEADER_BYTES));
+            int[] powers = new int[featureCount];
+            for (int f = 0, power = 1; f < featureCount; f++, power *= 3)
+                powers[f] = power;
+            for (int first = 0; first < tables.deckSize; first++)
+                for (int second = 0; second < tables.deckSize; second++)
+                    heap.putShort((short) third(first, second, powers));
+            long heapNanos = System.nanoTime() - start;
+
+            System.out.printf("%8d %6d %10d %12.1f %7.2f %14d %18d %11d %8.1f%n", featureCount, tables.deckSize,
+                    tables.bytes / 1024, generateNanos / 1e6, tables.loadNanos / 1e6, mapped / 1024, dealt / 1024,
+                    touched / 1024, heapNanos / 1e6);
+            sink = sum + heap.get(0);
+        }
+    }
+}
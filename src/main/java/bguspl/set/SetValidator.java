@@ -0,0 +1,16 @@
+package bguspl.set;
+
+/**
+ * Checks many candidate sets of three cards at once (see Util.testSets).
+ */
+interface SetValidator {
+
+    /**
+     * @param first  - the first card of each triple.
+     * @param second - the second card of each triple.
+     * @param third  - the third card of each triple.
+     * @param count  - the number of triples.
+     * @param legal  - set to a bitmap of the triples that are legal sets (bit i % 64 of legal[i / 64] for triple i).
+     */
+    void testSets(int[] first, int[] second, int[] third, int count, long[] legal);
+}
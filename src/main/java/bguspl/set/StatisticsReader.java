@@ -0,0 +1,252 @@
+package bguspl.set;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static bguspl.set.StatisticsWriter.BLOCK_HEADER_BYTES;
+import static bguspl.set.StatisticsWriter.BLOCK_MAGIC;
+import static bguspl.set.StatisticsWriter.FILE_MAGIC;
+import static bguspl.set.StatisticsWriter.FOOTER_MAGIC;
+import static bguspl.set.StatisticsWriter.TRAILER_BYTES;
+
+/**
+ * Reads a statistics file written by StatisticsWriter and aggregates it, one memory-mapped block at a time.
+ * Only the columns an aggregate needs are touched, so aggregating millions of games takes a few sequential scans
+ * over primitive arrays.
+ */
+public class StatisticsReader implements Closeable {
+
+    /**
+     * Receives the blocks of a statistics file.
+     */
+    interface BlockVisitor {
+        void block(long offset, int rows);
+    }
+
+    private final FileChannel channel;
+    private long[] blockOffsets = new long[16];
+    private int blocks;
+    private long games;
+
+    /**
+     * @param path - the statistics file.
+     * @throws IOException - if the file cannot be read or is not a statistics file.
+     */
+    public StatisticsReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            readIndex(channel, (offset, rows) -> {
+                if (blocks == blockOffsets.length) blockOffsets = Arrays.copyOf(blockOffsets, blocks * 2);
+                blockOffsets[blocks++] = offset;
+                games += rows;
+            });
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the block index of a statistics file: from the footer if there is one, otherwise by scanning the
+     * blocks (stopping at the first torn block).
+     *
+     * @param channel - the file.
+     * @param visitor - receives the offset and number of games of each block.
+     * @return - the offset right after the last block.
+     * @throws IOException - if the file cannot be read or is not a statistics file.
+     */
+    static long readIndex(FileChannel channel, BlockVisitor visitor) throws IOException {
+        long size = channel.size();
+        if (size < Long.BYTES || read(channel, 0, Long.BYTES).getLong() != FILE_MAGIC)
+            throw new IOException("not a statistics file");
+
+        if (size >= Long.BYTES + TRAILER_BYTES) {
+            ByteBuffer trailer = read(channel, size - TRAILER_BYTES, TRAILER_BYTES);
+            long footerOffset = trailer.getLong();
+            if (trailer.getInt() == FOOTER_MAGIC && footerOffset >= Long.BYTES && footerOffset < size) {
+                int blocks = read(channel, footerOffset, Integer.BYTES).getInt();
+                ByteBuffer index = read(channel, footerOffset + Integer.BYTES, blocks * (Long.BYTES + Integer.BYTES));
+                for (int i = 0; i < blocks; i++)
+                    visitor.block(index.getLong(i * Long.BYTES), index.getInt(blocks * Long.BYTES + i * Integer.BYTES));
+                return footerOffset;
+            }
+        }
+
+        long position = Long.BYTES;
+        while (position + BLOCK_HEADER_BYTES <= size) {
+            ByteBuffer header = read(channel, position, BLOCK_HEADER_BYTES);
+            int magic = header.getInt();
+            int bytes = header.getInt();
+            int rows = header.getInt();
+            if (magic != BLOCK_MAGIC || bytes < BLOCK_HEADER_BYTES || position + bytes > size) break;
+            visitor.block(position, rows);
+            position += bytes;
+        }
+        return position;
+    }
+
+    /**
+     * @return - the number of games in the file.
+     */
+    public long games() {
+        return games;
+    }
+
+    /**
+     * Aggregates all the games in the file.
+     *
+     * @return - the aggregated statistics.
+     * @throws IOException - if the file cannot be read.
+     */
+    public Summary aggregate() throws IOException {
+        Summary summary = new Summary();
+        for (int b = 0; b < blocks; b++) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, blockOffsets[b], BLOCK_HEADER_BYTES);
+            header.getInt();
+            int bytes = header.getInt();
+            MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, blockOffsets[b], bytes);
+            aggregateBlock(block, summary);
+        }
+        return summary;
+    }
+
+    private static void aggregateBlock(ByteBuffer block, Summary summary) {
+        block.position(2 * Integer.BYTES);
+        int rows = block.getInt();
+        int sets = block.getInt();
+        int players = block.getInt();
+
+        int position = BLOCK_HEADER_BYTES + rows * Long.BYTES; // skip the start times
+        LongBuffer duration = longs(block, position, rows);
+        LongBuffer wallClock = longs(block, position += rows * Long.BYTES, rows);
+        IntBuffer reshuffles = ints(block, position += rows * Long.BYTES, rows);
+        IntBuffer cardsLeft = ints(block, position += rows * Integer.BYTES, rows);
+        IntBuffer setOffsets = ints(block, position += rows * Integer.BYTES, rows + 1);
+        position += 2 * (rows + 1) * Integer.BYTES; // skip the player offsets
+        LongBuffer setTimes = longs(block, position, sets);
+        IntBuffer penalties = ints(block, position + sets * Long.BYTES, players);
+
+        summary.games += rows;
+        summary.players += players;
+        summary.sets += sets;
+        for (int i = 0; i < rows; i++) {
+            summary.durationMillis += duration.get(i);
+            summary.wallClockMillis += wallClock.get(i);
+            summary.reshuffles += reshuffles.get(i);
+            summary.cardsLeft += cardsLeft.get(i);
+
+            long previous = 0;
+            for (int s = setOffsets.get(i); s < setOffsets.get(i + 1); s++) {
+                long time = setTimes.get(s);
+                summary.timeToSet[bucket(time - previous)]++;
+                previous = time;
+            }
+        }
+        for (int i = 0; i < players; i++)
+            summary.penalties += penalties.get(i);
+    }
+
+    private static LongBuffer longs(ByteBuffer block, int position, int length) {
+        block.position(position);
+        ByteBuffer slice = block.slice();
+        slice.limit(length * Long.BYTES);
+        return slice.asLongBuffer();
+    }
+
+    private static IntBuffer ints(ByteBuffer block, int position, int length) {
+        block.position(position);
+        ByteBuffer slice = block.slice();
+        slice.limit(length * Integer.BYTES);
+        return slice.asIntBuffer();
+    }
+
+    private static int bucket(long millis) {
+        return millis <= 0 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(millis);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining())
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("unexpected end of statistics file");
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Statistics aggregated over many games.
+     */
+    public static class Summary {
+
+        public long games;
+        public long players;
+        public long sets;
+        public long penalties;
+        public long reshuffles;
+        public long cardsLeft;
+        public long durationMillis;
+        public long wallClockMillis;
+
+        /**
+         * The number of sets found per time since the previous set (or the game start), in power of two buckets:
+         * bucket 0 holds 0ms, and bucket b holds 2^(b-1) to 2^b - 1 ms.
+         */
+        public final long[] timeToSet = new long[Long.SIZE + 1];
+
+        /**
+         * @param fraction - the fraction of the sets (e.g. 0.99).
+         * @return - an upper bound (in ms) of the time it took to find that fraction of the sets.
+         */
+        public long timeToSetPercentile(double fraction) {
+            long target = (long) Math.ceil(sets * fraction);
+            long seen = 0;
+            for (int b = 0; b < timeToSet.length; b++) {
+                seen += timeToSet[b];
+                if (seen >= target && seen > 0) return b == 0 ? 0 : (1L << b) - 1;
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            if (games == 0) return "no games";
+            return String.format("%d games, %.2f sets/game, %.2f penalties/player, %.2f reshuffles/game, "
+                            + "%.2f cards left/game, %.1f s/game (%.1f s wall clock), time to set p50 <= %d ms, p99 <= %d ms",
+                    games, (double) sets / games, players == 0 ? 0.0 : (double) penalties / players,
+                    (double) reshuffles / games, (double) cardsLeft / games, durationMillis / 1000.0 / games,
+                    wallClockMillis / 1000.0 / games, timeToSetPercentile(0.5), timeToSetPercentile(0.99));
+        }
+    }
+
+    /**
+     * Prints a summary of a statistics file.
+     *
+     * @param args - the statistics file name.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: StatisticsReader <statistics file>");
+            return;
+        }
+        long start = System.nanoTime();
+        try (StatisticsReader reader = new StatisticsReader(Paths.get(args[0]))) {
+            Summary summary = reader.aggregate();
+            System.out.println(summary);
+            System.out.printf("aggregated in %.1f ms%n", (System.nanoTime() - start) / 1e6);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package bguspl.set;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Appends game statistics to a columnar file, one block of games at a time, so that memory use does not depend on
+ * the number of games. Can be shared by several games (all methods are thread safe).
+ *
+ * File layout (all numbers big endian, all blocks 8-byte aligned):
+ * <pre>
+ * file    := FILE_MAGIC block* footer?
+ * block   := BLOCK_MAGIC byteLength rows sets playerEntries (padding)
+ *            wallClockStart[rows] duration[rows] wallClock[rows] (longs)
+ *            reshuffles[rows] cardsLeft[rows] setOffsets[rows + 1] playerOffsets[rows + 1] (ints)
+ *            setTimes[sets] (longs) penalties[playerEntries] scores[playerEntries] (ints)
+ * footer  := blocks blockOffset[blocks] (longs) blockRows[blocks] (ints) (padding) footerOffset (long) FOOTER_MAGIC
+ * </pre>
+ * The footer is an index of the blocks. It is written when the writer is closed and removed when the file is
+ * opened again for appending. A file without a footer (e.g. after a crash) is read by scanning its blocks.
+ */
+public class StatisticsWriter implements GameRecorder, Closeable {
+
+    static final long FILE_MAGIC = 0x5345545354415431L; // "SETSTAT1"
+    static final int BLOCK_MAGIC = 0x424c4b31; // "BLK1"
+    static final int FOOTER_MAGIC = 0x46545231; // "FTR1"
+    static final int BLOCK_HEADER_BYTES = 6 * Integer.BYTES;
+    static final int TRAILER_BYTES = Long.BYTES + Integer.BYTES;
+
+    private final FileChannel channel;
+
+    /**
+     * The number of games in each block.
+     */
+    private final int blockGames;
+
+    /**
+     * The index of the blocks in the file.
+     */
+    private long[] blockOffsets = new long[16];
+    private int[] blockRows = new int[16];
+    private int blocks;
+
+    /**
+     * The columns of the block being built.
+     */
+    private final long[] wallClockStart;
+    private final long[] duration;
+    private final long[] wallClock;
+    private final int[] reshuffles;
+    private final int[] cardsLeft;
+    private final int[] setOffsets;
+    private final int[] playerOffsets;
+    private long[] setTimes = new long[1024];
+    private int[] penalties = new int[256];
+    private int[] scores = new int[256];
+    private int rows;
+
+    private boolean closed;
+
+    /**
+     * Opens a statistics file for appending, creating it if it does not exist.
+     *
+     * @param path       - the file.
+     * @param blockGames - the number of games to buffer in memory before writing them as a block.
+     * @throws IOException - if the file cannot be opened or is not a statistics file.
+     */
+    public StatisticsWriter(Path path, int blockGames) throws IOException {
+        this.blockGames = blockGames;
+        wallClockStart = new long[blockGames];
+        duration = new long[blockGames];
+        wallClock = new long[blockGames];
+        reshuffles = new int[blockGames];
+        cardsLeft = new int[blockGames];
+        setOffsets = new int[blockGames + 1];
+        playerOffsets = new int[blockGames + 1];
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                ByteBuffer magic = ByteBuffer.allocate(Long.BYTES).putLong(FILE_MAGIC);
+                magic.flip();
+                writeFully(magic, 0);
+            } else {
+                long end = StatisticsReader.readIndex(channel, this::addBlock);
+                channel.truncate(end); // drop the footer (or a torn block), new blocks go there
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void record(GameStatistics game) {
+        if (closed) throw new IllegalStateException("statistics file is closed");
+        int sets = game.sets();
+        int players = game.players();
+        int setFrom = setOffsets[rows];
+        int playerFrom = playerOffsets[rows];
+        if (setFrom + sets > setTimes.length) setTimes = Arrays.copyOf(setTimes, Math.max(setFrom + sets, setTimes.length * 2));
+        if (playerFrom + players > penalties.length) {
+            penalties = Arrays.copyOf(penalties, Math.max(playerFrom + players, penalties.length * 2));
+            scores = Arrays.copyOf(scores, penalties.length);
+        }
+
+        wallClockStart[rows] = game.wallClockStartMillis();
+        duration[rows] = game.durationMillis();
+        wallClock[rows] = game.wallClockMillis();
+        reshuffles[rows] = game.reshuffles();
+        cardsLeft[rows] = game.cardsLeft();
+        for (int i = 0; i < sets; i++)
+            setTimes[setFrom + i] = game.setTime(i);
+        for (int i = 0; i < players; i++) {
+            penalties[playerFrom + i] = game.penalties(i);
+            scores[playerFrom + i] = game.score(i);
+        }
+        rows++;
+        setOffsets[rows] = setFrom + sets;
+        playerOffsets[rows] = playerFrom + players;
+
+        if (rows == blockGames) flush();
+    }
+
+    /**
+     * Writes the games recorded so far to the file (as a possibly partial block).
+     */
+    public synchronized void flush() {
+        if (rows == 0) return;
+        int sets = setOffsets[rows];
+        int players = playerOffsets[rows];
+        int bytes = BLOCK_HEADER_BYTES + rows * 3 * Long.BYTES + rows * 2 * Integer.BYTES
+                + (rows + 1) * 2 * Integer.BYTES + sets * Long.BYTES + players * 2 * Integer.BYTES;
+        ByteBuffer block = ByteBuffer.allocate(bytes);
+        block.putInt(BLOCK_MAGIC).putInt(bytes).putInt(rows).putInt(sets).putInt(players).putInt(0);
+        block.asLongBuffer().put(wallClockStart, 0, rows).put(duration, 0, rows).put(wallClock, 0, rows);
+        block.position(block.position() + rows * 3 * Long.BYTES);
+        block.asIntBuffer().put(reshuffles, 0, rows).put(cardsLeft, 0, rows)
+                .put(setOffsets, 0, rows + 1).put(playerOffsets, 0, rows + 1);
+        block.position(block.position() + (rows * 2 + (rows + 1) * 2) * Integer.BYTES);
+        block.asLongBuffer().put(setTimes, 0, sets);
+        block.position(block.position() + sets * Long.BYTES);
+        block.asIntBuffer().put(penalties, 0, players).put(scores, 0, players);
+        block.rewind();
+
+        try {
+            long offset = channel.size();
+            writeFully(block, offset);
+            addBlock(offset, rows);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        rows = 0;
+    }
+
+    /**
+     * Writes the pending games and the footer, and closes the file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        flush();
+        closed = true;
+        try {
+            long footerOffset = channel.size();
+            int bytes = Integer.BYTES + blocks * (Long.BYTES + Integer.BYTES);
+            bytes += Math.floorMod(-bytes, Long.BYTES) + TRAILER_BYTES;
+            ByteBuffer footer = ByteBuffer.allocate(bytes);
+            footer.putInt(blocks);
+            for (int i = 0; i < blocks; i++)
+                footer.putLong(blockOffsets[i]);
+            for (int i = 0; i < blocks; i++)
+                footer.putInt(blockRows[i]);
+            footer.position(bytes - TRAILER_BYTES);
+            footer.putLong(footerOffset).putInt(FOOTER_MAGIC);
+            footer.flip();
+            writeFully(footer, footerOffset);
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void addBlock(long offset, int rows) {
+        if (blocks == blockOffsets.length) {
+            blockOffsets = Arrays.copyOf(blockOffsets, blocks * 2);
+            blockRows = Arrays.copyOf(blockRows, blocks * 2);
+        }
+        blockOffsets[blocks] = offset;
+        blockRows[blocks++] = rows;
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+}
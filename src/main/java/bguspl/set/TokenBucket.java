@@ -0,0 +1,95 @@
+package bguspl.set;
+
+/**
+ * Limits the rate of an action (e.g. the key presses of a computer player) to a number of actions per second, with
+ * bursts of up to a fixed number of actions after an idle period. Runs on the game clock, so a game on simulated time
+ * is limited in simulated time.
+ * Used by a single thread.
+ *
+ * @inv 0 <= tokens <= burst
+ */
+public class TokenBucket {
+
+    private final Clock clock;
+
+    /**
+     * The number of actions allowed per millisecond (0 or less for no limit).
+     */
+    private final double ratePerMilli;
+
+    /**
+     * The maximal number of actions allowed at once.
+     */
+    private final int burst;
+
+    /**
+     * The number of actions allowed now, and the time it was computed.
+     */
+    private double tokens;
+    private long refillMillis;
+
+    /**
+     * @param clock         - the clock to measure and wait for the time with.
+     * @param ratePerSecond - the number of actions allowed per second (0 or less for no limit).
+     * @param burst         - the maximal number of actions allowed at once (at least 1).
+     */
+    public TokenBucket(Clock clock, double ratePerSecond, int burst) {
+        this.clock = clock;
+        this.ratePerMilli = ratePerSecond / 1000.0;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.refillMillis = clock.currentTimeMillis();
+    }
+
+    /**
+     * @return - true iff the bucket limits the rate.
+     */
+    public boolean limited() {
+        return ratePerMilli > 0;
+    }
+
+    private void refill() {
+        long now = clock.currentTimeMillis();
+        if (now > refillMillis) {
+            tokens = Math.min(burst, tokens + (now - refillMillis) * ratePerMilli);
+            refillMillis = now;
+        }
+    }
+
+    /**
+     * Takes an action if it is allowed now.
+     *
+     * @return - true iff the action is allowed (and was counted).
+     */
+    public boolean tryAcquire() {
+        if (!limited()) return true;
+        refill();
+        if (tokens < 1) return false;
+        tokens--;
+        return true;
+    }
+
+    /**
+     * @return - the number of milliseconds until an action is allowed (0 if it is allowed now).
+     */
+    public long millisUntilAvailable() {
+        if (!limited()) return 0;
+        refill();
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / ratePerMilli);
+    }
+
+    /**
+     * Waits until an action is allowed, and takes it.
+     *
+     * @return - true iff the caller had to wait.
+     * @throws InterruptedException - if the thread was interrupted while waiting (the action was not taken).
+     */
+    public boolean acquire() throws InterruptedException {
+        boolean waited = false;
+        while (!tryAcquire()) {
+            waited = true;
+            clock.sleep(Math.max(1, millisUntilAvailable()));
+        }
+        return waited;
+    }
+}
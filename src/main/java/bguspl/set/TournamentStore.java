@@ -0,0 +1,398 @@
+package bguspl.set;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An embedded store of tournament results: the result of every player in every game, and a running Elo rating per
+ * player, kept in two files in a directory so they survive the process.
+ * <ul>
+ * <li>results.dat is append-only, with a fixed-width record per player per game (so record i is at a known
+ * offset, and a torn record at the end is simply dropped).</li>
+ * <li>ratings.idx is a memory-mapped index with a fixed-width entry per player id: the rating, games, wins and
+ * points. Looking up a player is a read at a known offset, and a game updates only the entries of its players.</li>
+ * </ul>
+ * File layouts (all numbers big endian):
+ * <pre>
+ * results.dat := RESULTS_MAGIC VERSION RECORD_BYTES record*
+ * record      := game wallClockStartMillis (longs) player players score penalties (ints) rating (double)
+ * ratings.idx := INDEX_MAGIC VERSION ENTRY_BYTES capacity players (ints) games records (longs) (padding to INDEX_HEADER_BYTES)
+ *                entry[capacity]
+ * entry       := rating (double) games wins points (longs)
+ * </pre>
+ * The index is updated after the results of a game are appended, and records how many results it includes, so
+ * results appended before a crash are applied again (from the ratings in their records) when the store is opened.
+ * The ratings are also kept in a leaderboard in memory, so the top players are found in O(k log n).
+ * Several games (threads) can record to the same store at once (all methods are thread safe); the files are
+ * locked, so the same store cannot be opened twice (by this process or another).
+ */
+public class TournamentStore implements GameRecorder, Closeable {
+
+    static final long RESULTS_MAGIC = 0x534554524553554cL; // "SETRESUL"
+    static final long INDEX_MAGIC = 0x534554454c4f4958L; // "SETELOIX"
+    static final int VERSION = 1;
+    static final int RESULTS_HEADER_BYTES = Long.BYTES + 2 * Integer.BYTES;
+    static final int RECORD_BYTES = 2 * Long.BYTES + 4 * Integer.BYTES + Double.BYTES;
+    static final int INDEX_HEADER_BYTES = 64;
+    static final int ENTRY_BYTES = Double.BYTES + 3 * Long.BYTES;
+
+    /**
+     * The rating of a player before its first game, and the most a rating changes in a game.
+     */
+    public static final double INITIAL_RATING = 1500;
+    public static final double K_FACTOR = 32;
+
+    /**
+     * The leaderboard ranks integer scores, so the ratings are ranked in hundredths.
+     */
+    private static final double RANK_SCALE = 100;
+
+    private final FileChannel results;
+    private final FileChannel index;
+    private final FileLock lock;
+    private MappedByteBuffer entries;
+    private int capacity;
+    private int players;
+    private long games;
+    private long records;
+
+    private Leaderboard leaderboard;
+
+    private boolean closed;
+
+    /**
+     * Opens the store in a directory, creating it if it does not exist.
+     *
+     * @param directory - the directory of the store files.
+     * @throws IOException - if the files cannot be opened, are not store files, or another process has them open.
+     */
+    public TournamentStore(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        results = FileChannel.open(directory.resolve("results.dat"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel indexChannel = null;
+        FileLock fileLock = null;
+        try {
+            try {
+                fileLock = results.tryLock();
+            } catch (OverlappingFileLockException e) {
+                fileLock = null; // open in this process
+            }
+            if (fileLock == null) throw new IOException("tournament store " + directory + " is already open");
+            indexChannel = FileChannel.open(directory.resolve("ratings.idx"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            index = indexChannel;
+            lock = fileLock;
+            openResults();
+            openIndex();
+            recover();
+        } catch (IOException | RuntimeException e) {
+            if (indexChannel != null) indexChannel.close();
+            results.close();
+            throw e;
+        }
+    }
+
+    private void openResults() throws IOException {
+        if (results.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(RESULTS_HEADER_BYTES).putLong(RESULTS_MAGIC).putInt(VERSION).putInt(RECORD_BYTES);
+            header.flip();
+            writeFully(results, header, 0);
+            return;
+        }
+        ByteBuffer header = readFully(results, 0, RESULTS_HEADER_BYTES);
+        if (header.getLong() != RESULTS_MAGIC || header.getInt() != VERSION || header.getInt() != RECORD_BYTES)
+            throw new IOException("not a tournament results file (or another version)");
+        long torn = (results.size() - RESULTS_HEADER_BYTES) % RECORD_BYTES;
+        if (torn != 0) results.truncate(results.size() - torn); // a record that was being written when the process died
+    }
+
+    private void openIndex() throws IOException {
+        if (index.size() == 0) {
+            map(16);
+            entries.putLong(0, INDEX_MAGIC).putInt(8, VERSION).putInt(12, ENTRY_BYTES);
+            for (int player = 0; player < capacity; player++)
+                entries.putDouble(entryOffset(player), INITIAL_RATING);
+            leaderboard = new Leaderboard(capacity);
+            return;
+        }
+        if (index.size() < INDEX_HEADER_BYTES) throw new IOException("not a tournament index file");
+        ByteBuffer header = readFully(index, 0, INDEX_HEADER_BYTES);
+        if (header.getLong(0) != INDEX_MAGIC || header.getInt(8) != VERSION || header.getInt(12) != ENTRY_BYTES)
+            throw new IOException("not a tournament index file (or another version)");
+        map(header.getInt(16));
+        players = entries.getInt(20);
+        games = entries.getLong(24);
+        records = entries.getLong(32);
+        leaderboard = new Leaderboard(capacity);
+        for (int player = 0; player < players; player++)
+            rank(player);
+    }
+
+    /**
+     * Maps the index with room for a number of players (the file only grows).
+     */
+    private void map(int capacity) throws IOException {
+        this.capacity = capacity;
+        entries = index.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_BYTES + (long) capacity * ENTRY_BYTES);
+        entries.putInt(16, capacity);
+    }
+
+    /**
+     * Applies the results appended after the last index update (if the process died in between). The results of a
+     * game are appended at once, but the process may die part way: the records after the last complete game are
+     * dropped, so a game is either replayed for all of its players or not at all.
+     */
+    private void recover() throws IOException {
+        long stored = (results.size() - RESULTS_HEADER_BYTES) / RECORD_BYTES;
+        if (stored < records) throw new IOException("the tournament index has more results than the results file");
+        long record = records;
+        while (record < stored) {
+            int n = readFully(results, RESULTS_HEADER_BYTES + record * RECORD_BYTES, RECORD_BYTES).getInt(20);
+            if (n <= 0 || n > stored - record) break;
+            ByteBuffer game = readFully(results, RESULTS_HEADER_BYTES + record * RECORD_BYTES, n * RECORD_BYTES);
+            if (!completeGame(game, n)) break;
+            int topScore = Integer.MIN_VALUE;
+            for (int i = 0; i < n; i++)
+                topScore = Math.max(topScore, game.getInt(i * RECORD_BYTES + 24));
+            ensureCapacity(n);
+            for (int i = 0; i < n; i++) {
+                int score = game.getInt(i * RECORD_BYTES + 24);
+                update(i, game.getDouble(i * RECORD_BYTES + 32), score == topScore ? 1 : 0, score);
+            }
+            games = Math.max(games, game.getLong(0) + 1);
+            record += n;
+        }
+        if (record < stored) results.truncate(RESULTS_HEADER_BYTES + record * RECORD_BYTES);
+        records = record;
+        writeHeader();
+    }
+
+    /**
+     * @return - true iff the n records hold the results of all the players of one game, in order.
+     */
+    private static boolean completeGame(ByteBuffer records, int n) {
+        long game = records.getLong(0);
+        for (int i = 0; i < n; i++) {
+            int offset = i * RECORD_BYTES;
+            if (records.getLong(offset) != game || records.getInt(offset + 16) != i || records.getInt(offset + 20) != n)
+                return false;
+        }
+        return true;
+    }
+
+    private void ensureCapacity(int players) throws IOException {
+        if (players > capacity) {
+            int oldCapacity = capacity;
+            map(Math.max(players, capacity * 2));
+            for (int player = oldCapacity; player < capacity; player++)
+                entries.putDouble(entryOffset(player), INITIAL_RATING);
+            Leaderboard grown = new Leaderboard(capacity);
+            for (int player = 0; player < this.players; player++)
+                grown.setScore(player, leaderboard.score(player));
+            leaderboard = grown;
+        }
+        this.players = Math.max(this.players, players);
+    }
+
+    private static int entryOffset(int player) {
+        return INDEX_HEADER_BYTES + player * ENTRY_BYTES;
+    }
+
+    private void update(int player, double rating, int wins, int score) {
+        int offset = entryOffset(player);
+        entries.putDouble(offset, rating);
+        entries.putLong(offset + 8, entries.getLong(offset + 8) + 1);
+        entries.putLong(offset + 16, entries.getLong(offset + 16) + wins);
+        entries.putLong(offset + 24, entries.getLong(offset + 24) + score);
+        rank(player);
+    }
+
+    private void rank(int player) {
+        leaderboard.setScore(player, (int) Math.round(rating(player) * RANK_SCALE));
+    }
+
+    private void writeHeader() {
+        entries.putInt(20, players).putLong(24, games).putLong(32, records);
+    }
+
+    /**
+     * Appends the results of a game and updates the ratings of its players: each pair of players is an Elo match
+     * (won by the higher score, a draw on equal scores), weighted so a game changes a rating by at most K_FACTOR.
+     *
+     * @param game - the statistics of the game.
+     */
+    @Override
+    public synchronized void record(GameStatistics game) {
+        if (closed) throw new IllegalStateException("tournament store is closed");
+        int n = game.players();
+        if (n == 0) return;
+        try {
+            ensureCapacity(n);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        double[] before = new double[n];
+        double[] strength = new double[n];
+        int topScore = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            before[i] = rating(i);
+            strength[i] = Math.pow(10, before[i] / 400);
+            topScore = Math.max(topScore, game.score(i));
+        }
+        double[] after = before.clone();
+        if (n > 1) {
+            double k = K_FACTOR / (n - 1);
+            for (int i = 0; i < n; i++)
+                for (int j = i + 1; j < n; j++) {
+                    double expected = strength[i] / (strength[i] + strength[j]);
+                    double actual = Integer.compare(game.score(i), game.score(j)) * 0.5 + 0.5;
+                    after[i] += k * (actual - expected);
+                    after[j] -= k * (actual - expected);
+                }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(n * RECORD_BYTES);
+        for (int i = 0; i < n; i++)
+            buffer.putLong(games).putLong(game.wallClockStartMillis()).putInt(i).putInt(n)
+                    .putInt(game.score(i)).putInt(game.penalties(i)).putDouble(after[i]);
+        buffer.flip();
+        try {
+            writeFully(results, buffer, RESULTS_HEADER_BYTES + records * RECORD_BYTES);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        for (int i = 0; i < n; i++)
+            update(i, after[i], game.score(i) == topScore ? 1 : 0, game.score(i));
+        games++;
+        records += n;
+        writeHeader();
+    }
+
+    /**
+     * @return - the current rating of a player (INITIAL_RATING if it did not play yet).
+     */
+    public synchronized double rating(int player) {
+        return player < capacity ? entries.getDouble(entryOffset(player)) : INITIAL_RATING;
+    }
+
+    /**
+     * @return - the number of games a player played.
+     */
+    public synchronized long games(int player) {
+        return player < capacity ? entries.getLong(entryOffset(player) + 8) : 0;
+    }
+
+    /**
+     * @return - the number of games a player won (shared wins count too).
+     */
+    public synchronized long wins(int player) {
+        return player < capacity ? entries.getLong(entryOffset(player) + 16) : 0;
+    }
+
+    /**
+     * @return - the total score of a player over all its games.
+     */
+    public synchronized long points(int player) {
+        return player < capacity ? entries.getLong(entryOffset(player) + 24) : 0;
+    }
+
+    /**
+     * Finds the best rated players.
+     *
+     * @param players - where to put the players, best first (as many as fit).
+     * @return        - the number of players put (only players that played).
+     */
+    public synchronized int top(int[] players) {
+        int count = leaderboard.top(players);
+        while (count > 0 && games(players[count - 1]) == 0) count--; // never played, ranked last
+        return count;
+    }
+
+    /**
+     * @return - the number of games recorded.
+     */
+    public synchronized long games() {
+        return games;
+    }
+
+    /**
+     * @return - the number of player results recorded.
+     */
+    public synchronized long results() {
+        return records;
+    }
+
+    /**
+     * Receives the stored results.
+     */
+    public interface ResultVisitor {
+        void result(long game, long wallClockStartMillis, int player, int players, int score, int penalties, double rating);
+    }
+
+    /**
+     * Reads all the stored results, in the order they were recorded.
+     *
+     * @param visitor - receives each result.
+     * @throws IOException - if the results file cannot be read.
+     */
+    public synchronized void forEachResult(ResultVisitor visitor) throws IOException {
+        int batch = 4096;
+        for (long from = 0; from < records; from += batch) {
+            int count = (int) Math.min(batch, records - from);
+            ByteBuffer buffer = readFully(results, RESULTS_HEADER_BYTES + from * RECORD_BYTES, count * RECORD_BYTES);
+            for (int i = 0; i < count; i++)
+                visitor.result(buffer.getLong(), buffer.getLong(), buffer.getInt(), buffer.getInt(), buffer.getInt(),
+                        buffer.getInt(), buffer.getDouble());
+        }
+    }
+
+    /**
+     * Writes the results and the index to the disk and closes the store.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            results.force(false);
+            entries.force();
+        } finally {
+            lock.release();
+            index.close();
+            results.close();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        int[] best = new int[3];
+        int count = top(best);
+        StringBuilder builder = new StringBuilder(String.format("tournament: %d games, %d players", games, players));
+        for (int i = 0; i < count; i++)
+            builder.append(i == 0 ? ", best rated: " : ", ").append(String.format("player %d (%.0f)", best[i] + 1, rating(best[i])));
+        return builder.toString();
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+        while (buffer.hasRemaining())
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new IOException("unexpected end of file");
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+}
@@ -50,6 +50,14 @@ public interface UserInterface {
      */
     void setCountdown(long millies, boolean warn);
 
+    /**
+     * Start the countdown to a deadline; the countdown display is updated by the user interface itself until the
+     * deadline is reached or the countdown is set again (so the caller only calls this when the deadline changes).
+     * @param millies    - the milliseconds from now to the deadline.
+     * @param warnMillis - once at most this many milliseconds remain, the timer is painted in red and displays milliseconds.
+     */
+    void startCountdown(long millies, long warnMillis);
+
     /**
      * Set the elapsed time to the specified number of milliseconds.
      * @param millies - the milliseconds to be shown.
@@ -0,0 +1,120 @@
+package bguspl.set;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A user interface that displays nothing and only counts the updates it receives, e.g. to check how much work a game
+ * would give a real user interface. All methods are thread safe.
+ */
+public class UserInterfaceCounting implements UserInterface {
+
+    private final LongAdder cardUpdates = new LongAdder();
+    private final LongAdder tokenUpdates = new LongAdder();
+    private final LongAdder timerUpdates = new LongAdder();
+    private final LongAdder playerUpdates = new LongAdder();
+    private final LongAdder announcements = new LongAdder();
+
+    @Override
+    public void placeCard(int card, int slot) {
+        cardUpdates.increment();
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        cardUpdates.increment();
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        tokenUpdates.increment();
+    }
+
+    @Override
+    public void removeTokens() {
+        tokenUpdates.increment();
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        tokenUpdates.increment();
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        tokenUpdates.increment();
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        timerUpdates.increment();
+    }
+
+    @Override
+    public void startCountdown(long millies, long warnMillis) {
+        timerUpdates.increment();
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        timerUpdates.increment();
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        playerUpdates.increment();
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        playerUpdates.increment();
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        announcements.increment();
+    }
+
+    @Override
+    public void dispose() {}
+
+    /**
+     * @return - the number of cards placed on or removed from the table.
+     */
+    public long cardUpdates() {
+        return cardUpdates.sum();
+    }
+
+    /**
+     * @return - the number of tokens placed or removed (removing all tokens of a slot or the table counts once).
+     */
+    public long tokenUpdates() {
+        return tokenUpdates.sum();
+    }
+
+    /**
+     * @return - the number of countdown and elapsed time updates.
+     */
+    public long timerUpdates() {
+        return timerUpdates.sum();
+    }
+
+    /**
+     * @return - the number of score and freeze updates.
+     */
+    public long playerUpdates() {
+        return playerUpdates.sum();
+    }
+
+    /**
+     * @return - the number of winner announcements.
+     */
+    public long announcements() {
+        return announcements.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "user interface updates: " + cardUpdates() + " cards, " + tokenUpdates() + " tokens, "
+                + timerUpdates() + " timers, " + playerUpdates() + " players, " + announcements() + " announcements";
+    }
+}
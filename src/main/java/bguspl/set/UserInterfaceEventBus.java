@@ -0,0 +1,400 @@
+package bguspl.set;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Publishes the user interface updates of the game to independent subscribers (the displayed user interface, the
+ * update log, metrics, spectators), each with its own event ring, overflow policy and delivery thread.
+ * The game threads only write the update to the rings: they never wait for a subscriber, so a slow renderer or
+ * logger cannot stretch the dealer's or the players' critical sections. The updates of one subscriber are delivered
+ * in the order they were published, and the lag of each subscriber is measured.
+ * Only timer updates (the countdown, the elapsed time and the freeze times) are ever dropped or coalesced, since a
+ * newer one replaces them. If a subscriber falls so far behind that a card, token or score update cannot be queued,
+ * the subscriber is resynced from the state source instead (see setStateSource).
+ * All methods are thread safe.
+ */
+public class UserInterfaceEventBus implements UserInterface {
+
+    private static final int PLACE_CARD = 0;
+    private static final int REMOVE_CARD = 1;
+    private static final int PLACE_TOKEN = 2;
+    private static final int REMOVE_ALL_TOKENS = 3;
+    private static final int REMOVE_TOKENS = 4;
+    private static final int REMOVE_TOKEN = 5;
+    private static final int SET_COUNTDOWN = 6;
+    private static final int SET_ELAPSED = 7;
+    private static final int SET_FREEZE = 8;
+    private static final int SET_SCORE = 9;
+    private static final int ANNOUNCE_WINNER = 10;
+    private static final int START_COUNTDOWN = 11;
+
+    /**
+     * The keys of the replaceable events (see EventRing): the timer display, and the freeze time of each player
+     * (FREEZE_KEY + player).
+     */
+    private static final int TIMER_KEY = 0;
+    private static final int FREEZE_KEY = 1;
+
+    /**
+     * The user interface method of each event kind (for the flight recorder).
+     */
+    private static final String[] KIND_NAMES = {"placeCard", "removeCard", "placeToken", "removeTokens",
+            "removeTokens(slot)", "removeToken", "setCountdown", "setElapsed", "setFreeze", "setScore", "announceWinner",
+            "startCountdown"};
+
+    /**
+     * The longest a delivery thread sleeps without checking its ring (in case a wake up was missed).
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final Logger logger;
+
+    /**
+     * The maximal time dispose waits for the subscribers to receive the pending updates.
+     */
+    private final long disposeTimeoutMillis;
+
+    /**
+     * The current subscriptions (replaced, never modified, so publishing iterates an array without allocating).
+     */
+    private volatile Subscription[] subscriptions = new Subscription[0];
+
+    /**
+     * Writes the current game state to a subscriber that missed updates (or null if there is none).
+     */
+    private volatile Consumer<UserInterface> stateSource;
+
+    /**
+     * @param logger               - the logger of the delivery threads.
+     * @param disposeTimeoutMillis - the maximal time dispose waits for the subscribers to receive the pending updates.
+     */
+    public UserInterfaceEventBus(Logger logger, long disposeTimeoutMillis) {
+        this.logger = logger;
+        this.disposeTimeoutMillis = disposeTimeoutMillis;
+    }
+
+    /**
+     * Adds a subscriber and starts its delivery thread. It receives the updates published from now on.
+     *
+     * @param name     - the subscriber name (for its thread and its statistics).
+     * @param ui       - the subscriber.
+     * @param capacity - the maximal number of updates that can be pending for the subscriber.
+     * @param policy   - what to do with an update when the subscriber has capacity pending updates.
+     * @return - the subscription.
+     */
+    public Subscription subscribe(String name, UserInterface ui, int capacity, OverflowPolicy policy) {
+        Subscription subscription = new Subscription(name, ui, new EventRing(capacity, policy));
+        synchronized (this) {
+            Subscription[] current = subscriptions;
+            Subscription[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = subscription;
+            subscriptions = next;
+        }
+        subscription.thread.startWithLog();
+        return subscription;
+    }
+
+    /**
+     * Sets where subscribers that missed card, token or score updates are resynced from.
+     *
+     * @param stateSource - writes the current cards, tokens and scores to the user interface it is given (called
+     *                      by the delivery thread of the subscriber).
+     */
+    public void setStateSource(Consumer<UserInterface> stateSource) {
+        this.stateSource = stateSource;
+    }
+
+    /**
+     * @return - the current subscriptions.
+     */
+    public List<Subscription> subscriptions() {
+        return Collections.unmodifiableList(Arrays.asList(subscriptions));
+    }
+
+    private void publish(int kind, int first, int second, long value, Object payload) {
+        publish(kind, EventRing.NO_KEY, first, second, value, payload);
+    }
+
+    private void publish(int kind, int key, int first, int second, long value, Object payload) {
+        long nanos = System.nanoTime();
+        for (Subscription subscription : subscriptions)
+            subscription.publish(kind, key, first, second, value, payload, nanos);
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        publish(PLACE_CARD, card, slot, 0, null);
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        publish(REMOVE_CARD, 0, slot, 0, null);
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        publish(PLACE_TOKEN, player, slot, 0, null);
+    }
+
+    @Override
+    public void removeTokens() {
+        publish(REMOVE_ALL_TOKENS, 0, 0, 0, null);
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        publish(REMOVE_TOKENS, 0, slot, 0, null);
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        publish(REMOVE_TOKEN, player, slot, 0, null);
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        publish(SET_COUNTDOWN, TIMER_KEY, warn ? 1 : 0, 0, millies, null);
+    }
+
+    @Override
+    public void startCountdown(long millies, long warnMillis) {
+        publish(START_COUNTDOWN, TIMER_KEY, (int) Math.min(warnMillis, Integer.MAX_VALUE), 0, millies, null);
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        publish(SET_ELAPSED, TIMER_KEY, 0, 0, millies, null);
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        publish(SET_FREEZE, FREEZE_KEY + player, player, 0, millies, null);
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        publish(SET_SCORE, player, 0, score, null);
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        publish(ANNOUNCE_WINNER, 0, 0, 0, players.clone());
+    }
+
+    /**
+     * Lets the subscribers receive the pending updates (waiting up to the dispose timeout in total), stops their
+     * delivery threads and disposes of them.
+     */
+    @Override
+    public void dispose() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(disposeTimeoutMillis);
+        Subscription[] closing;
+        synchronized (this) {
+            closing = subscriptions;
+            subscriptions = new Subscription[0];
+        }
+        for (Subscription subscription : closing)
+            subscription.close();
+        for (Subscription subscription : closing) {
+            long left = deadline - System.nanoTime();
+            try {
+                if (left > 0) TimeUnit.NANOSECONDS.timedJoin(subscription.thread, left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (subscription.thread.isAlive()) {
+                logger.warning("subscriber " + subscription.name + " did not receive " + subscription.ring.size()
+                        + " pending updates in time");
+                subscription.thread.interrupt();
+            }
+            subscription.ui.dispose();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("user interface events:");
+        for (Subscription subscription : subscriptions)
+            builder.append(' ').append(subscription);
+        return builder.toString();
+    }
+
+    /**
+     * A subscriber, its pending updates and the thread that delivers them.
+     */
+    public class Subscription implements Runnable {
+
+        private final String name;
+        private final UserInterface ui;
+        private final EventRing ring;
+        private final ThreadLogger thread;
+
+        /**
+         * True iff the delivery thread may be parked waiting for an update.
+         */
+        private volatile boolean idle;
+
+        /**
+         * True iff the subscription was closed (the thread delivers the pending updates and stops).
+         */
+        private volatile boolean closed;
+
+        private final AtomicLong delivered = new AtomicLong();
+        private volatile long maxLag;
+        private volatile long maxLatencyNanos;
+        private volatile long totalLatencyNanos;
+
+        private Subscription(String name, UserInterface ui, EventRing ring) {
+            this.name = name;
+            this.ui = ui;
+            this.ring = ring;
+            this.thread = new ThreadLogger(this, "ui-events-" + name, logger);
+            this.thread.setDaemon(true);
+        }
+
+        private void publish(int kind, int key, int first, int second, long value, Object payload, long nanos) {
+            if (closed) return;
+            if (ring.offer(kind, key, first, second, value, payload, nanos) && idle) LockSupport.unpark(thread);
+        }
+
+        private void close() {
+            closed = true;
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            EventRing.Event event = new EventRing.Event();
+            while (!thread.isInterrupted()) {
+                if (ring.takeResync()) resync();
+                int lag = ring.size();
+                if (ring.poll(event)) {
+                    if (lag > maxLag) maxLag = lag;
+                    Object dispatch = GameEvents.beginUserInterfaceDispatch(name, KIND_NAMES[event.kind],
+                            System.nanoTime() - event.publishNanos);
+                    deliver(event);
+                    GameEvents.end(dispatch);
+                    long latency = System.nanoTime() - event.publishNanos;
+                    totalLatencyNanos += latency;
+                    if (latency > maxLatencyNanos) maxLatencyNanos = latency;
+                    delivered.incrementAndGet();
+                    continue;
+                }
+                if (closed && ring.size() == 0) break;
+                idle = true;
+                if (ring.size() == 0) LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                idle = false;
+            }
+            ThreadLogger.logStop(logger, thread.getName());
+        }
+
+        private void resync() {
+            Consumer<UserInterface> source = stateSource;
+            if (source == null) {
+                logger.warning("subscriber " + name + " missed updates and there is no state to resync it from");
+                return;
+            }
+            source.accept(ui);
+        }
+
+        private void deliver(EventRing.Event event) {
+            switch (event.kind) {
+                case PLACE_CARD:
+                    ui.placeCard(event.first, event.second);
+                    break;
+                case REMOVE_CARD:
+                    ui.removeCard(event.second);
+                    break;
+                case PLACE_TOKEN:
+                    ui.placeToken(event.first, event.second);
+                    break;
+                case REMOVE_ALL_TOKENS:
+                    ui.removeTokens();
+                    break;
+                case REMOVE_TOKENS:
+                    ui.removeTokens(event.second);
+                    break;
+                case REMOVE_TOKEN:
+                    ui.removeToken(event.first, event.second);
+                    break;
+                case SET_COUNTDOWN:
+                    ui.setCountdown(event.value, event.first != 0);
+                    break;
+                case START_COUNTDOWN:
+                    // the deadline was event.value milliseconds after publishing, not after delivering
+                    long queued = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - event.publishNanos);
+                    ui.startCountdown(Math.max(0, event.value - queued), event.first);
+                    break;
+                case SET_ELAPSED:
+                    ui.setElapsed(event.value);
+                    break;
+                case SET_FREEZE:
+                    ui.setFreeze(event.first, event.value);
+                    break;
+                case SET_SCORE:
+                    ui.setScore(event.first, (int) event.value);
+                    break;
+                case ANNOUNCE_WINNER:
+                    ui.announceWinner((int[]) event.payload);
+                    break;
+                default:
+                    throw new IllegalStateException("unknown user interface event " + event.kind);
+            }
+        }
+
+        /**
+         * @return - the number of updates published to the subscriber and not yet delivered.
+         */
+        public int lag() {
+            return ring.size();
+        }
+
+        /**
+         * @return - the largest number of updates that were pending when the subscriber received one.
+         */
+        public long maxLag() {
+            return maxLag;
+        }
+
+        /**
+         * @return - the longest time from publishing an update until the subscriber finished receiving it.
+         */
+        public long maxLatencyNanos() {
+            return maxLatencyNanos;
+        }
+
+        public long delivered() {
+            return delivered.get();
+        }
+
+        public long dropped() {
+            return ring.dropped();
+        }
+
+        public long coalesced() {
+            return ring.coalesced();
+        }
+
+        /**
+         * @return - the number of times the subscriber was resynced because it missed card, token or score updates.
+         */
+        public long resyncs() {
+            return ring.resyncs();
+        }
+
+        @Override
+        public String toString() {
+            long count = delivered.get();
+            return String.format("[%s: %d delivered, %d dropped, %d coalesced, %d resyncs, lag %d (max %d), latency mean %.1f us max %.1f us]",
+                    name, count, ring.dropped(), ring.coalesced(), ring.resyncs(), ring.size(), maxLag,
+                    count == 0 ? 0.0 : totalLatencyNanos / 1e3 / count, maxLatencyNanos / 1e3);
+        }
+    }
+}
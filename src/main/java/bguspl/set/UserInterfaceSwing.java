@@ -4,10 +4,13 @@ import bguspl.set.ex.Player;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.FileNotFoundException;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -23,16 +26,25 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
     private final PlayersPanel playersPanel;
     private final WinnerPanel winnerPanel;
     private final Config config;
+    private final Logger logger;
 
     static String intInBaseToPaddedString(int n, int padding, int base) {
         return format("%" + padding + "s", Integer.toString(n, base)).replace(' ', '0');
     }
 
     public UserInterfaceSwing(Logger logger, Config config, Player[] players) {
+        this(logger, config, players, new UtilImpl(config));
+    }
+
+    /**
+     * @param util - converts the cards to their features (to draw the cards that have no image file).
+     */
+    public UserInterfaceSwing(Logger logger, Config config, Player[] players, Util util) {
 
         this.config = config;
+        this.logger = logger;
         timerPanel = new TimerPanel();
-        gamePanel = new GamePanel();
+        gamePanel = new GamePanel(util);
         playersPanel = new PlayersPanel();
         winnerPanel = new WinnerPanel();
 
@@ -73,6 +85,13 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
         private final JLabel timerField;
 
+        /**
+         * Updates the countdown display until the deadline (on the event dispatch thread, at the render rate).
+         */
+        private final Timer countdownTimer;
+        private long deadlineNanos;
+        private long warnMillis;
+
         private String generateTime(long millies, boolean warn) {
             if (warn)
                 return format("Remaining Time: %.2f", (double) millies / 1000.0f);
@@ -88,165 +107,452 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             timerField.setForeground(Color.BLACK);
 
             add(timerField);
+
+            countdownTimer = new Timer(1000 / Math.max(config.renderFps, 1), e -> showCountdown());
         }
 
         private void setCountdown(long millies, boolean warn) {
-            timerField.setText(generateTime(millies, warn));
-            timerField.setForeground(warn ? Color.RED : Color.BLACK);
+            EventQueue.invokeLater(() -> {
+                countdownTimer.stop();
+                show(generateTime(millies, warn), warn);
+            });
+        }
+
+        private void startCountdown(long millies, long warnMillis) {
+            long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millies); // before the event dispatch queue; the event bus subtracts its own queueing
+            EventQueue.invokeLater(() -> {
+                this.deadlineNanos = deadlineNanos;
+                this.warnMillis = warnMillis;
+                showCountdown();
+                countdownTimer.restart();
+            });
+        }
+
+        private void showCountdown() {
+            long millies = Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+            boolean warn = millies <= warnMillis;
+            show(generateTime(millies, warn), warn);
+            if (millies == 0) countdownTimer.stop();
         }
 
         private void setElapsed(long millies) {
-            timerField.setText("Elapsed time: " + millies / 1000);
+            EventQueue.invokeLater(() -> {
+                countdownTimer.stop();
+                show("Elapsed time: " + millies / 1000, false);
+            });
+        }
+
+        private void show(String text, boolean warn) {
+            if (!text.equals(timerField.getText())) timerField.setText(text); // most frames do not change the seconds
+            timerField.setForeground(warn ? Color.RED : Color.BLACK);
+        }
+
+        private void stop() {
+            countdownTimer.stop();
         }
     }
 
     private class GamePanel extends JLayeredPane {
 
+        /**
+         * The size of a token badge, the gap between badges, and the maximal number of badge rows in a cell.
+         */
+        private static final int BADGE_SIZE = 24;
+        private static final int BADGE_GAP = 4;
+        private static final int BADGE_ROWS = 2;
+
         private final Image emptyCard;
-        private final Image[] deck;
         private final Image[][] grid;
-        private final boolean[][][] playerTokens;
-        private final JLabel[][] tokenText;
+
+        /**
+         * The images of the recently placed cards (loaded from their files or drawn from their features).
+         */
+        private final CardImageCache cardImages;
+
+        /**
+         * The players that have a token on each slot, as a bitmask (tokenWords longs per slot), and their colors.
+         */
+        private final AtomicLongArray tokenOwners;
+        private final int tokenWords;
+        private final Color[] playerColors;
+        private final Font badgeFont;
+
+        /**
+         * The slots changed since the last frame (active rendering only).
+         */
+        private final boolean[] dirtySlots;
+        private boolean dirty;
+        private final Timer renderTimer;
+
+        /**
+         * Rendering statistics: frames painted, total and longest paint time, and total repainted area.
+         */
+        private long frames;
+        private long paintNanos;
+        private long maxPaintNanos;
+        private long repaintedPixels;
+
+        /**
+         * The number of card images drawn because their file was missing (only for the first warning).
+         */
+        private int missingCardFiles;
 
         private Image loadImageResource(String filename) {
             URL imageResource = getClass().getClassLoader().getResource(filename);
             if (imageResource == null)
                 throw new RuntimeException(new FileNotFoundException(filename));
-            return new ImageIcon(imageResource).getImage();
-        }
-
-        private GamePanel() {
-
-            setPreferredSize(new Dimension(config.columns * config.cellWidth, config.rows * config.cellHeight));
-
-            // init deck and load all pictures from png files
-            assert config.featureSize < 10; // otherwise there will be naming conflicts
-
-            // load the image resources
-            deck = new Image[config.deckSize];
-            for (int i = 0; i < config.deckSize; ++i)
-                deck[i] = loadImageResource("cards/" + intInBaseToPaddedString(i, config.featureCount, config.featureSize) + ".png");
-            emptyCard = loadImageResource("cards/empty_card.png");
-
-            grid = new Image[config.rows][config.columns];
-            tokenText = new JLabel[config.rows][config.columns];
-            playerTokens = new boolean[config.players][config.rows][config.columns];
-            for (int row = 0; row < config.rows; row++) {
-                for (int column = 0; column < config.columns; column++) {
-                    // init the cards on the table grid as empty cards
-                    grid[row][column] = emptyCard;
-
-                    // init the JLabel selection overlay
-                    tokenText[row][column] = new JLabel("");
-                    tokenText[row][column].setVerticalAlignment(JLabel.TOP);
-                    tokenText[row][column].setHorizontalAlignment(JLabel.CENTER);
-                    tokenText[row][column].setOpaque(false);
-                    tokenText[row][column].setBorder(BorderFactory.createLineBorder(Color.black));
-                    tokenText[row][column].setBounds((column * config.cellWidth), (row * config.cellHeight), config.cellWidth, config.cellHeight);
-                    add(tokenText[row][column]);
-                }
+            return toCompatibleCellImage(new ImageIcon(imageResource).getImage());
+        }
+
+        /**
+         * Converts an image once to the display's pixel format, scaled to the cell size, so that painting a cell
+         * is a plain (accelerated) copy.
+         */
+        private Image toCompatibleCellImage(Image image) {
+            GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+            BufferedImage compatible = gc.createCompatibleImage(config.cellWidth, config.cellHeight, Transparency.TRANSLUCENT);
+            Graphics2D g = compatible.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, config.cellWidth, config.cellHeight, null);
+            g.dispose();
+            return compatible;
+        }
+
+        /**
+         * @return - the image file name of a card (its features as digits).
+         */
+        private String cardFileName(int card) {
+            return "cards/" + intInBaseToPaddedString(card, config.featureCount, config.featureSize) + ".png";
+        }
+
+        /**
+         * @return - true iff the card images are loaded from files (otherwise they are drawn). Cards without a file
+         *           are drawn either way (see loadCardImage).
+         */
+        private boolean useImageFiles() {
+            switch (config.cardImages) {
+                case "files":
+                    return true;
+                case "rendered":
+                    return false;
+                case "auto":
+                    break;
+                default:
+                    logger.severe("unknown card images " + config.cardImages + ", using auto");
+            }
+            // with 10 or more values per feature the file names are ambiguous
+            ClassLoader resources = getClass().getClassLoader();
+            return config.featureSize < 10 && resources.getResource("cards/empty_card.png") != null
+                    && resources.getResource(cardFileName(0)) != null;
+        }
+
+        /**
+         * @return - the image of a card from its file, or drawn if there is no file for it (e.g. a deck with more
+         *           features than the bundled images).
+         */
+        private Image loadCardImage(int card, CardRenderer renderer) {
+            if (getClass().getClassLoader().getResource(cardFileName(card)) == null) {
+                if (missingCardFiles++ == 0) logger.warning("no image file for card " + card + ", drawing it instead");
+                return toCompatibleCellImage(renderer.render(card));
+            }
+            return loadImageResource(cardFileName(card));
+        }
+
+        private GamePanel(Util util) {
+
+            // room for the columns the dealer adds when there is no legal set (blank while they are not in use)
+            setPreferredSize(new Dimension(config.maxColumns * config.cellWidth, config.rows * config.cellHeight));
+
+            // the card images are loaded or drawn when the cards are placed, and only the recent ones are kept
+            CardRenderer renderer = new CardRenderer(util, config);
+            if (useImageFiles()) {
+                cardImages = new CardImageCache(config.cardImageCacheSize, card -> loadCardImage(card, renderer));
+                emptyCard = getClass().getClassLoader().getResource("cards/empty_card.png") != null
+                        ? loadImageResource("cards/empty_card.png") : toCompatibleCellImage(renderer.renderEmpty());
+            } else {
+                cardImages = new CardImageCache(config.cardImageCacheSize, card -> toCompatibleCellImage(renderer.render(card)));
+                emptyCard = toCompatibleCellImage(renderer.renderEmpty());
             }
+
+            grid = new Image[config.rows][config.maxColumns];
+            for (Image[] row : grid)
+                Arrays.fill(row, 0, config.columns, emptyCard); // init the cards on the table grid as empty cards
+
+            tokenWords = (config.players + Long.SIZE - 1) / Long.SIZE;
+            tokenOwners = new AtomicLongArray(config.maxTableSize * tokenWords);
+            playerColors = new Color[config.players];
+            for (int player = 0; player < config.players; player++)
+                playerColors[player] = Color.getHSBColor((player * 0.618034f) % 1f, 0.8f, 0.85f);
+            badgeFont = new Font("SansSerif", Font.BOLD, BADGE_SIZE / 2);
+
+            dirtySlots = new boolean[config.maxTableSize];
+            if (config.activeRendering) {
+                renderTimer = new Timer(1000 / Math.max(config.renderFps, 1), e -> renderFrame());
+                renderTimer.start();
+            } else
+                renderTimer = null;
+        }
+
+        /**
+         * Marks a slot for repainting: immediately (coalesced by Swing) or in the next frame of the active render loop.
+         */
+        private void repaintSlot(int slot) {
+            if (renderTimer == null) {
+                repaint(slotBounds(slot));
+                return;
+            }
+            synchronized (dirtySlots) {
+                dirtySlots[slot] = true;
+                dirty = true;
+            }
+        }
+
+        /**
+         * Paints the union of the slots changed since the last frame (runs on the event dispatch thread).
+         */
+        private void renderFrame() {
+            Rectangle region = null;
+            synchronized (dirtySlots) {
+                if (!dirty) return;
+                for (int slot = 0; slot < dirtySlots.length; slot++)
+                    if (dirtySlots[slot]) {
+                        dirtySlots[slot] = false;
+                        region = region == null ? slotBounds(slot) : region.union(slotBounds(slot));
+                    }
+                dirty = false;
+            }
+            if (region != null) paintImmediately(region);
+        }
+
+        private Rectangle slotBounds(int slot) {
+            int row = config.slotRow(slot);
+            int column = config.slotColumn(slot);
+            return new Rectangle(column * config.cellWidth, row * config.cellHeight, config.cellWidth, config.cellHeight);
         }
 
         private void placeCard(int slot, int card) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            grid[row][column] = deck[card];
-            validate();
-            repaint();
+            grid[config.slotRow(slot)][config.slotColumn(slot)] = cardImages.get(card);
+            repaintSlot(slot);
         }
 
         private void removeCard(int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            grid[row][column] = emptyCard;
-            validate();
-            repaint();
+            // the slots of an added column are blank when empty (the column is removed when all its slots are)
+            grid[config.slotRow(slot)][config.slotColumn(slot)] = slot < config.tableSize ? emptyCard : null;
+            repaintSlot(slot);
         }
 
         private void placeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            playerTokens[player][row][column] = true;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+            updateTokens(slot * tokenWords + player / Long.SIZE, 1L << player, true);
+            repaintSlot(slot);
         }
 
         private void removeTokens() {
-            for (int i = 0; i < config.tableSize; i++)
+            for (int i = 0; i < config.maxTableSize; i++)
                 removeTokens(i);
         }
 
         private void removeTokens(int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            for (int player = 0; player < playerTokens.length; player++) {
-                playerTokens[player][row][column] = false;
-                tokenText[row][column].setText(generatePlayersTokenText(row, column));
-            }
+            for (int word = 0; word < tokenWords; word++)
+                tokenOwners.set(slot * tokenWords + word, 0L);
+            repaintSlot(slot);
         }
 
         private void removeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            playerTokens[player][row][column] = false;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+            updateTokens(slot * tokenWords + player / Long.SIZE, 1L << player, false);
+            repaintSlot(slot);
+        }
+
+        private void updateTokens(int index, long bit, boolean set) {
+            long owners;
+            do {
+                owners = tokenOwners.get(index);
+            } while (!tokenOwners.compareAndSet(index, owners, set ? owners | bit : owners & ~bit));
         }
 
-        private String generatePlayersTokenText(int row, int column) {
-            String text = "";
-            for (int player = 0; player < config.players; player++) {
-                if (playerTokens[player][row][column])
-                    text = text.concat(config.playerNames[player] + ", ");
+        /**
+         * Draws the tokens on a slot as colored badges with the player numbers, in rows from the top of the cell.
+         * When there are more tokens than badges that fit in the cell, the last badge shows how many are left.
+         */
+        private void paintTokens(Graphics2D g, int slot, int x, int y) {
+            int tokens = 0;
+            for (int word = 0; word < tokenWords; word++)
+                tokens += Long.bitCount(tokenOwners.get(slot * tokenWords + word));
+            if (tokens == 0) return;
+
+            int perRow = Math.max(1, (config.cellWidth - BADGE_GAP) / (BADGE_SIZE + BADGE_GAP));
+            int fit = perRow * Math.max(1, BADGE_ROWS);
+            int drawn = 0;
+            FontMetrics metrics = g.getFontMetrics(badgeFont);
+            g.setFont(badgeFont);
+            for (int word = 0; word < tokenWords && drawn < fit; word++) {
+                long owners = tokenOwners.get(slot * tokenWords + word);
+                while (owners != 0 && drawn < fit) {
+                    int player = word * Long.SIZE + Long.numberOfTrailingZeros(owners);
+                    owners &= owners - 1;
+                    boolean overflow = drawn == fit - 1 && tokens > fit;
+                    String text = overflow ? "+" + (tokens - drawn) : Integer.toString(player + 1);
+                    int badgeX = x + BADGE_GAP + (drawn % perRow) * (BADGE_SIZE + BADGE_GAP);
+                    int badgeY = y + BADGE_GAP + (drawn / perRow) * (BADGE_SIZE + BADGE_GAP);
+                    g.setColor(overflow ? Color.DARK_GRAY : playerColors[player]);
+                    g.fillOval(badgeX, badgeY, BADGE_SIZE, BADGE_SIZE);
+                    g.setColor(Color.WHITE);
+                    g.drawString(text, badgeX + (BADGE_SIZE - metrics.stringWidth(text)) / 2,
+                            badgeY + (BADGE_SIZE + metrics.getAscent() - metrics.getDescent()) / 2);
+                    drawn++;
+                }
             }
-            if (text.length() < 2)
-                return "";
-            return text.substring(0, text.length() - 2);
         }
 
         @Override
         public void paintComponent(Graphics g) {
-            // draw card images
-            for (int row = 0; row < config.rows; row++)
-                for (int column = 0; column < config.columns; column++)
-                    g.drawImage(grid[row][column], (column * config.cellWidth), (row * config.cellHeight), this);
+            long start = System.nanoTime();
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) clip = new Rectangle(getSize());
+
+            // draw only the cards (and their tokens) that intersect the region being repainted
+            int firstRow = Math.max(clip.y / config.cellHeight, 0);
+            int lastRow = Math.min((clip.y + clip.height - 1) / config.cellHeight, config.rows - 1);
+            int firstColumn = Math.max(clip.x / config.cellWidth, 0);
+            int lastColumn = Math.min((clip.x + clip.width - 1) / config.cellWidth, config.maxColumns - 1);
+            Graphics2D g2 = (Graphics2D) g;
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            for (int row = firstRow; row <= lastRow; row++)
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    int x = column * config.cellWidth;
+                    int y = row * config.cellHeight;
+                    if (grid[row][column] == null) {
+                        g2.setColor(getBackground());
+                        g2.fillRect(x, y, config.cellWidth, config.cellHeight);
+                        continue;
+                    }
+                    g2.drawImage(grid[row][column], x, y, this);
+                    g2.setColor(Color.BLACK);
+                    g2.drawRect(x, y, config.cellWidth - 1, config.cellHeight - 1);
+                    paintTokens(g2, config.slot(row, column), x, y);
+                }
+
+            long nanos = System.nanoTime() - start;
+            frames++;
+            paintNanos += nanos;
+            maxPaintNanos = Math.max(maxPaintNanos, nanos);
+            repaintedPixels += (long) clip.width * clip.height;
+        }
+
+        private String renderStatistics() {
+            if (frames == 0) return "no frames rendered";
+            long panelPixels = (long) config.maxColumns * config.cellWidth * config.rows * config.cellHeight;
+            return String.format("%d frames, %.3f ms average paint time, %.3f ms longest, %.1f%% of the panel repainted on average",
+                    frames, paintNanos / 1e6 / frames, maxPaintNanos / 1e6, 100.0 * repaintedPixels / frames / panelPixels);
+        }
+
+        private void stopRendering() {
+            if (renderTimer != null) renderTimer.stop();
         }
     }
 
+    /**
+     * The names and scores of the players. With more players than the scoreboard size, it shows the best ranked
+     * players and the human players (the ones playing on this screen), re-ranked on every score change through a
+     * leaderboard, so its size and its updates do not grow with the number of players.
+     */
     private class PlayersPanel extends JPanel {
 
         private final JLabel[][] playersTable;
 
+        /**
+         * The players ranked by the scores shown, and the freeze shown for each player.
+         */
+        private final Leaderboard leaderboard = new Leaderboard(config.players);
+        private final long[] freezeMillis = new long[config.players];
+
+        /**
+         * True iff the panel shows the best ranked players (otherwise it shows all the players by id).
+         */
+        private final boolean ranked;
+
+        /**
+         * The player shown in each column, the best ranked players and which human players are among them (reused
+         * by every update).
+         */
+        private final int[] shown;
+        private final int[] best;
+        private final boolean[] humanShown;
+
         private PlayersPanel() {
-            this.setLayout(new GridLayout(2, config.players));
-            this.setPreferredSize(new Dimension(config.players * config.playerCellWidth, config.rows * config.playerCellHeight));
-            this.playersTable = new JLabel[2][config.players];
-            for (int i = 0; i < config.players; i++) {
-                this.playersTable[0][i] = new JLabel(config.playerNames[i]);
+            ranked = config.players > config.scoreboardSize;
+            int columns = ranked ? Math.min(config.players, config.scoreboardSize + config.humanPlayers) : config.players;
+            this.setLayout(new GridLayout(2, columns));
+            this.setPreferredSize(new Dimension(columns * config.playerCellWidth, config.rows * config.playerCellHeight));
+            this.playersTable = new JLabel[2][columns];
+            this.shown = new int[columns];
+            this.best = new int[columns];
+            this.humanShown = new boolean[config.humanPlayers];
+            for (int i = 0; i < columns; i++) {
+                this.playersTable[0][i] = new JLabel();
                 this.playersTable[0][i].setFont(new Font("Serif", Font.BOLD, config.fontSize));
                 this.playersTable[0][i].setHorizontalAlignment(JLabel.CENTER);
                 this.add(playersTable[0][i]);
             }
 
-            for (int i = 0; i < config.players; i++) {
-                this.playersTable[1][i] = new JLabel("0");
+            for (int i = 0; i < columns; i++) {
+                this.playersTable[1][i] = new JLabel();
                 this.playersTable[1][i].setFont(new Font("Serif", Font.PLAIN, config.fontSize));
                 this.playersTable[1][i].setHorizontalAlignment(JLabel.CENTER);
                 this.add(playersTable[1][i]);
             }
+            for (int i = 0; i < columns; i++)
+                shown[i] = i;
+            rank();
+            for (int i = 0; i < columns; i++)
+                show(i);
         }
 
-        private void setFreeze(int player, long millies) {
+        /**
+         * Chooses the players to show: the best ranked ones, then the human players that are not among them, then
+         * more ranked players if some human players are among the best.
+         */
+        private void rank() {
+            if (!ranked) return;
+            int count = leaderboard.top(best), column = 0, next = 0;
+            Arrays.fill(humanShown, false);
+            for (; next < count && column < config.scoreboardSize; next++) {
+                shown[column++] = best[next];
+                if (best[next] < humanShown.length) humanShown[best[next]] = true;
+            }
+            for (int human = 0; human < humanShown.length; human++)
+                if (!humanShown[human]) shown[column++] = human;
+            for (; next < count && column < shown.length; next++)
+                if (best[next] >= humanShown.length) shown[column++] = best[next];
+        }
+
+        private void show(int column) {
+            int player = shown[column];
+            long millies = freezeMillis[player];
             if (millies > 0) {
-                this.playersTable[0][player].setText(config.playerNames[player] + " (" + millies / 1000 + ")");
-                this.playersTable[0][player].setForeground(Color.RED);
+                this.playersTable[0][column].setText(config.playerNames[player] + " (" + millies / 1000 + ")");
+                this.playersTable[0][column].setForeground(Color.RED);
             } else {
-                this.playersTable[0][player].setText(config.playerNames[player]);
-                this.playersTable[0][player].setForeground(Color.BLACK);
+                this.playersTable[0][column].setText(config.playerNames[player]);
+                this.playersTable[0][column].setForeground(Color.BLACK);
             }
+            playersTable[1][column].setText(Integer.toString(leaderboard.score(player)));
+        }
+
+        private void setFreeze(int player, long millies) {
+            freezeMillis[player] = millies;
+            for (int column = 0; column < shown.length; column++)
+                if (shown[column] == player) show(column);
         }
 
         private void setScore(int player, int score) {
-            playersTable[1][player].setText(Integer.toString(score));
+            leaderboard.setScore(player, score);
+            if (!ranked) {
+                show(player);
+                return;
+            }
+            rank();
+            for (int column = 0; column < shown.length; column++)
+                show(column);
         }
     }
 
@@ -309,6 +615,11 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         timerPanel.setCountdown(millies, warn);
     }
 
+    @Override
+    public void startCountdown(long millies, long warnMillis) {
+        timerPanel.startCountdown(millies, warnMillis);
+    }
+
     @Override
     public void setElapsed(long millies) {
         timerPanel.setElapsed(millies);
@@ -333,6 +644,10 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
     @Override
     public void dispose() {
+        gamePanel.stopRendering();
+        timerPanel.stop();
+        logger.info("card rendering: " + gamePanel.renderStatistics());
+        logger.info(gamePanel.cardImages.toString());
         super.dispose();
     }
 }
@@ -31,6 +31,19 @@ public interface Util {
      */
     boolean testSet(int[] cards);
 
+    /**
+     * Checks many triples of cards at once (like testSet on each of them). Triple i is the cards first[i], second[i]
+     * and third[i].
+     *
+     * @param first  - the first card of each triple.
+     * @param second - the second card of each triple.
+     * @param third  - the third card of each triple.
+     * @param count  - the number of triples (the arrays may be longer).
+     * @param legal  - receives a bitmap of the legal sets: bit i % 64 of legal[i / 64] is set iff triple i is a legal
+     *                 set (must have at least (count + 63) / 64 entries, which are cleared first).
+     */
+    void testSets(int[] first, int[] second, int[] third, int count, long[] legal);
+
     /**
      * Finds and returns up to count sets in the given collection of cards.
      *
@@ -40,6 +53,27 @@ public interface Util {
      */
     List<int[]> findSets(List<Integer> deck, int count);
 
+    /**
+     * Finds a legal set in the given collection of cards. The answer is cached per collection of cards (regardless
+     * of their order), since the same collections are checked over and over.
+     *
+     * @param deck - a collection of cards (may not include null objects).
+     * @return - the card ids of a legal set (must not be modified), or null if there is no legal set in the
+     *           collection.
+     */
+    int[] findSet(List<Integer> deck);
+
+    /**
+     * Finds and returns up to count sets in the given collection of cards, like findSets, splitting the search
+     * across threads when the collection is large enough.
+     *
+     * @param deck  - a collection of cards (may not include null objects).
+     * @param count - the maximum number of sets to find.
+     * @return - up to count sets, in the same order as findSets returns them (when searching in parallel and count
+     *           limits the search, these are not necessarily the first count sets findSets would return).
+     */
+    CardSets findSetsParallel(List<Integer> deck, int count);
+
     /**
      * Spin a random number of times (for debugging/testing).
      */
@@ -3,7 +3,10 @@ package bguspl.set;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.IntStream;
 
 /**
@@ -11,10 +14,69 @@ import java.util.stream.IntStream;
  */
 public class UtilImpl implements Util {
 
+    /**
+     * The number of triples findSets checks per testSets call (a multiple of 64).
+     */
+    private static final int TEST_SETS_BATCH = 256;
+
     private final Config config;
 
+    /**
+     * The results of findSet per pool of cards.
+     */
+    private final SetCache setCache;
+
+    /**
+     * Checks triples of cards for testSets.
+     */
+    private final SetValidator setValidator;
+
+    /**
+     * The precomputed set tables, or null if there are none.
+     */
+    private final SetTables setTables;
+
+    /**
+     * The value of a card id digit of each feature (featureSize to the power of the feature index).
+     */
+    private final int[] featurePowers;
+
     public UtilImpl(Config config) {
+        this(config, null);
+    }
+
+    /**
+     * @param config    - the game configuration.
+     * @param setTables - precomputed set tables of the deck (or null), used to check and find sets without
+     *                    comparing features.
+     */
+    public UtilImpl(Config config, SetTables setTables) {
         this.config = config;
+        this.setTables = setTables;
+        this.featurePowers = new int[config.featureCount];
+        for (int i = 0, power = 1; i < config.featureCount; i++, power *= config.featureSize)
+            featurePowers[i] = power;
+        this.setCache = new SetCache(config.setCacheSize, config.deckSize);
+        SetValidator vector = vectorSetValidator(config);
+        this.setValidator = vector != null ? vector : new ScalarSetValidator(config);
+    }
+
+    /**
+     * Creates the Vector API validator (VectorSetValidator), if it can be used: it is compiled only on JDK 17 or
+     * later (the vector build profile), runs only with --add-modules jdk.incubator.vector, and supports only 3
+     * values per feature. It is loaded by reflection, so this class still compiles and runs on Java 8.
+     *
+     * @param config - the game configuration.
+     * @return - the validator, or null if it cannot be used.
+     */
+    static SetValidator vectorSetValidator(Config config) {
+        if (config.featureSize != 3) return null;
+        try {
+            return (SetValidator) Class.forName("bguspl.set.VectorSetValidator")
+                    .getDeclaredConstructor(Config.class).newInstance(config);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
     }
 
     private void cardToFeatures(int card, int[] features) {
@@ -40,21 +102,23 @@ public class UtilImpl implements Util {
 
     @Override
     public boolean testSet(int[] cards) {
-        int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
-        for (int i = 0; i < config.featureCount; ++i) {
+        if (setTables != null && cards.length == 3) return setTables.third(cards[0], cards[1]) == cards[2];
+        // the features are read straight from the card ids, so checking a claim does not allocate
+        for (int power : featurePowers) {
             boolean sameSame = true, butDifferent = true;
 
             // check if this features is sameSame in all cards
-            for (int j = 1; j < features.length; ++j)
-                if (features[0][i] != features[j][i]) {
+            int first = cards[0] / power % config.featureSize;
+            for (int j = 1; j < cards.length; ++j)
+                if (first != cards[j] / power % config.featureSize) {
                     sameSame = false;
                     break;
                 }
 
             // check if this feature is butDifferent in all cards
-            for (int j = 1; j < features.length; ++j)
-                for (int k = j; k < features.length; ++k)
-                    if (features[j - 1][i] == features[k][i]) {
+            for (int j = 1; j < cards.length && butDifferent; ++j)
+                for (int k = j; k < cards.length; ++k)
+                    if (cards[j - 1] / power % config.featureSize == cards[k] / power % config.featureSize) {
                         butDifferent = false;
                         break;
                     }
@@ -64,8 +128,21 @@ public class UtilImpl implements Util {
         return true;
     }
 
+    @Override
+    public void testSets(int[] first, int[] second, int[] third, int count, long[] legal) {
+        setValidator.testSets(first, second, third, count, legal);
+    }
+
     @Override
     public List<int[]> findSets(List<Integer> deck, int count) {
+        if (setTables != null) {
+            CardSets sets = findSetsByCompletion(deck.stream().mapToInt(Integer::intValue).toArray(), count);
+            List<int[]> list = new LinkedList<>();
+            for (int i = 0; i < sets.size(); i++)
+                list.add(sets.get(i));
+            return list;
+        }
+        if (config.featureSize == 3) return findSetsInBatches(deck, count);
         LinkedList<int[]> sets = new LinkedList<>();
         int n = deck.size();
         int r = config.featureSize;
@@ -90,6 +167,223 @@ public class UtilImpl implements Util {
         return sets;
     }
 
+    /**
+     * Finds sets like findSets does when there are no set tables, but checks the triples through testSets, a batch
+     * at a time, so the hints use the vectorized validator when it is available.
+     */
+    private List<int[]> findSetsInBatches(List<Integer> deck, int count) {
+        LinkedList<int[]> sets = new LinkedList<>();
+        int n = deck.size();
+        int[] first = new int[TEST_SETS_BATCH], second = new int[TEST_SETS_BATCH], third = new int[TEST_SETS_BATCH];
+        long[] legal = new long[TEST_SETS_BATCH / 64];
+        int batched = 0;
+        // the triples are generated in the same lexicographic order as the combinations of findSets
+        for (int i = 0; i < n; i++)
+            for (int j = i + 1; j < n; j++)
+                for (int k = j + 1; k < n; k++) {
+                    first[batched] = deck.get(i);
+                    second[batched] = deck.get(j);
+                    third[batched] = deck.get(k);
+                    if (++batched == TEST_SETS_BATCH) {
+                        if (collectSets(first, second, third, batched, legal, sets, count)) return sets;
+                        batched = 0;
+                    }
+                }
+        collectSets(first, second, third, batched, legal, sets, count);
+        return sets;
+    }
+
+    /**
+     * Checks a batch of triples and adds the legal ones (sorted) to sets, in order.
+     *
+     * @return - true iff sets has reached count.
+     */
+    private boolean collectSets(int[] first, int[] second, int[] third, int batched, long[] legal,
+                                List<int[]> sets, int count) {
+        if (batched == 0) return sets.size() >= count;
+        testSets(first, second, third, batched, legal);
+        for (int word = 0; word < (batched + 63) / 64; word++)
+            for (long bits = legal[word]; bits != 0; bits &= bits - 1) {
+                int i = word * 64 + Long.numberOfTrailingZeros(bits);
+                int[] set = {first[i], second[i], third[i]};
+                Arrays.sort(set);
+                sets.add(set);
+                if (sets.size() >= count) return true;
+            }
+        return false;
+    }
+
+    @Override
+    public int[] findSet(List<Integer> deck) {
+        int[] set = setCache.get(deck);
+        if (set == null) {
+            CardSets sets = findSetsParallel(deck, 1);
+            set = sets.size() == 0 ? null : sets.get(0);
+            setCache.put(deck, set);
+            return set;
+        }
+        return SetCache.isNoSet(set) ? null : set;
+    }
+
+    /**
+     * @return - the cache of findSet results (for statistics).
+     */
+    public SetCache setCache() {
+        return setCache;
+    }
+
+    @Override
+    public CardSets findSetsParallel(List<Integer> deck, int count) {
+        return findSetsParallel(deck, count, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Finds up to count sets in the given collection of cards, using the given fork/join pool if the collection
+     * has at least config.parallelSetSearchThreshold cards.
+     *
+     * @param deck  - a collection of cards (may not include null objects).
+     * @param count - the maximum number of sets to find.
+     * @param pool  - the pool to run the search in.
+     * @return - up to count sets, in the same order as findSets returns them (when searching in parallel and count
+     *           limits the search, these are not necessarily the first count sets findSets would return).
+     */
+    public CardSets findSetsParallel(List<Integer> deck, int count, ForkJoinPool pool) {
+        int r = config.featureSize;
+        int[] cards = deck.stream().mapToInt(Integer::intValue).toArray();
+        if (cards.length < r || count <= 0) return new CardSets(r, 1);
+        if (setTables != null) return findSetsByCompletion(cards, count);
+
+        // one bit per feature value, so a feature is sameSame iff the OR of the bits has a single bit set
+        // and butDifferent iff it has r bits set
+        int[][] featureBits = new int[cards.length][config.featureCount];
+        for (int i = 0; i < cards.length; ++i) {
+            cardToFeatures(cards[i], featureBits[i]);
+            for (int f = 0; f < config.featureCount; ++f)
+                featureBits[i][f] = 1 << featureBits[i][f];
+        }
+
+        boolean parallel = cards.length >= config.parallelSetSearchThreshold;
+        SetSearch search = new SetSearch(cards, featureBits, 0, cards.length - r + 1, count, new AtomicInteger(), parallel);
+        CardSets sets = parallel ? pool.invoke(search) : search.compute();
+        sets.truncate(count);
+        return sets;
+    }
+
+    /**
+     * Finds up to count sets with the completion table: a pair of cards is in a set iff its completion is in the
+     * collection too, so only the pairs are checked. The sets are found in the same order as findSets finds them
+     * (by the positions of their cards in the collection).
+     *
+     * @param cards - a collection of distinct cards.
+     * @param count - the maximum number of sets to find.
+     * @return - up to count sets.
+     */
+    private CardSets findSetsByCompletion(int[] cards, int count) {
+        CardSets sets = new CardSets(3);
+        int[] position = new int[config.deckSize];
+        Arrays.fill(position, -1);
+        for (int i = 0; i < cards.length; i++)
+            position[cards[i]] = i;
+
+        int[] set = new int[3];
+        for (int i = 0; i < cards.length; i++)
+            for (int j = i + 1; j < cards.length; j++)
+                if (position[setTables.third(cards[i], cards[j])] > j) {
+                    set[0] = cards[i];
+                    set[1] = cards[j];
+                    set[2] = setTables.third(cards[i], cards[j]);
+                    Arrays.sort(set);
+                    sets.add(set);
+                    if (sets.size() >= count) return sets;
+                }
+        return sets;
+    }
+
+    /**
+     * Searches for the sets whose first card (in collection order) is in a range of indices, splitting the range
+     * across the fork/join pool. All searches of the same query share a counter of the sets found, so they stop
+     * early once count sets were found.
+     */
+    private class SetSearch extends RecursiveTask<CardSets> {
+
+        /**
+         * The number of combinations checked between two looks at the shared counter.
+         */
+        private static final int EARLY_EXIT_CHECK_INTERVAL = 1024;
+
+        private final int[] cards;
+        private final int[][] featureBits;
+        private final int from;
+        private final int to;
+        private final int count;
+        private final AtomicInteger found;
+        private final boolean split;
+
+        private SetSearch(int[] cards, int[][] featureBits, int from, int to, int count, AtomicInteger found, boolean split) {
+            this.cards = cards;
+            this.featureBits = featureBits;
+            this.from = from;
+            this.to = to;
+            this.count = count;
+            this.found = found;
+            this.split = split;
+        }
+
+        @Override
+        protected CardSets compute() {
+            if (split && to - from > 1 && found.get() < count) {
+                int middle = (from + to) >>> 1;
+                SetSearch left = new SetSearch(cards, featureBits, from, middle, count, found, true);
+                left.fork();
+                CardSets right = new SetSearch(cards, featureBits, middle, to, count, found, true).compute();
+                CardSets sets = left.join();
+                sets.addAll(right);
+                return sets;
+            }
+
+            int n = cards.length;
+            int r = config.featureSize;
+            CardSets sets = new CardSets(r);
+            int[] combination = new int[r];
+            int[] set = new int[r];
+            for (int first = from; first < to && found.get() < count; ++first) {
+                for (int i = 0; i < r; ++i)
+                    combination[i] = first + i;
+                int checked = 0;
+                while (combination[r - 1] < n) {
+                    if (isSet(combination)) {
+                        for (int i = 0; i < r; ++i)
+                            set[i] = cards[combination[i]];
+                        Arrays.sort(set);
+                        sets.add(set);
+                        if (found.incrementAndGet() >= count) return sets;
+                    }
+                    if (++checked % EARLY_EXIT_CHECK_INTERVAL == 0 && found.get() >= count) return sets;
+
+                    // generate next combination (keeping the first card) in lexicographic order
+                    int t = r - 1;
+                    while (t != 1 && combination[t] == n - r + t) --t;
+                    if (t == 0 || combination[t] == n - r + t) break;
+                    combination[t]++;
+                    for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+                }
+            }
+            return sets;
+        }
+
+        private boolean isSet(int[] combination) {
+            int r = combination.length;
+            for (int f = 0; f < config.featureCount; ++f) {
+                int bits = 0;
+                for (int index : combination)
+                    bits |= featureBits[index][f];
+                int distinct = Integer.bitCount(bits);
+                if (distinct != 1 && distinct != r) return false;
+            }
+            return true;
+        }
+    }
+
     public void spin() {
         if (config.randomSpinMax <= 0) return;
         long cycles = ThreadLocalRandom.current().nextLong(config.randomSpinMin, config.randomSpinMax);
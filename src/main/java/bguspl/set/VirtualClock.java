@@ -0,0 +1,157 @@
+package bguspl.set;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A clock running on simulated time, for tests, simulations and benchmarks.
+ * Time stands still while any registered game thread is running. Once all of them are idle (waiting, sleeping,
+ * or blocked on a monitor held by an idle thread), the time jumps straight to the earliest sleep deadline and
+ * the sleeping threads are woken up. Threads blocked on monitors count as idle, since the monitor owner is either
+ * running (and therefore not idle) or waiting for the time to advance.
+ */
+public class VirtualClock implements Clock {
+
+    /**
+     * How often the advancing thread checks whether the game threads are idle.
+     */
+    private static final long IDLE_CHECK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * The number of consecutive idle checks needed before the time advances (filters out threads that are just
+     * between two states).
+     */
+    private static final int IDLE_CHECKS = 2;
+
+    /**
+     * Guards the current time and the sleep deadlines; sleeping threads wait on it.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * The current simulated time.
+     */
+    private volatile long now;
+
+    /**
+     * The deadlines of the sleeping threads (the first sleepers entries are used).
+     */
+    private long[] deadlines = new long[16];
+    private int sleepers;
+
+    /**
+     * The registered game threads.
+     */
+    private final List<Thread> threads = new CopyOnWriteArrayList<>();
+
+    /**
+     * The thread that advances the time.
+     */
+    private final Thread advancer;
+
+    /**
+     * True iff the clock was shut down.
+     */
+    private volatile boolean shutdown;
+
+    /**
+     * Creates a clock starting at time 0.
+     */
+    public VirtualClock() {
+        this(0);
+    }
+
+    /**
+     * @param start - the initial time in milliseconds.
+     */
+    public VirtualClock(long start) {
+        now = start;
+        advancer = new Thread(this::advanceWhenIdle, "virtual-clock");
+        advancer.setDaemon(true);
+        advancer.start();
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        if (millis <= 0) return;
+        synchronized (lock) {
+            long deadline = now + millis;
+            addDeadline(deadline);
+            try {
+                while (now < deadline)
+                    lock.wait();
+            } finally {
+                removeDeadline(deadline);
+            }
+        }
+    }
+
+    @Override
+    public void register(Thread thread) {
+        threads.add(thread);
+    }
+
+    /**
+     * Stops advancing the time.
+     */
+    public void shutdown() {
+        shutdown = true;
+        advancer.interrupt();
+    }
+
+    private void advanceWhenIdle() {
+        int idleChecks = 0;
+        while (!shutdown) {
+            LockSupport.parkNanos(IDLE_CHECK_NANOS);
+            if (!gameThreadsIdle()) idleChecks = 0;
+            else if (++idleChecks >= IDLE_CHECKS) {
+                idleChecks = 0;
+                synchronized (lock) {
+                    // sleepers that were already woken up but did not leave sleep yet are about to run
+                    long earliest = earliestDeadline();
+                    if (sleepers > 0 && earliest > now) {
+                        now = earliest;
+                        lock.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean gameThreadsIdle() {
+        for (Thread thread : threads) {
+            Thread.State state = thread.getState();
+            if (state == Thread.State.TERMINATED) threads.remove(thread);
+            else if (state == Thread.State.RUNNABLE) return false;
+        }
+        return true;
+    }
+
+    private void addDeadline(long deadline) {
+        if (sleepers == deadlines.length) deadlines = Arrays.copyOf(deadlines, sleepers * 2);
+        deadlines[sleepers++] = deadline;
+    }
+
+    private void removeDeadline(long deadline) {
+        for (int i = 0; i < sleepers; i++)
+            if (deadlines[i] == deadline) {
+                deadlines[i] = deadlines[--sleepers];
+                return;
+            }
+    }
+
+    private long earliestDeadline() {
+        long earliest = Long.MAX_VALUE;
+        for (int i = 0; i < sleepers; i++)
+            earliest = Math.min(earliest, deadlines[i]);
+        return earliest;
+    }
+}
@@ -1,9 +1,15 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.GameEvents;
+import bguspl.set.GameRecorder;
+import bguspl.set.GameStatistics;
+import bguspl.set.Leaderboard;
 
+
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.Random;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -37,18 +43,85 @@ public class Dealer implements Runnable {
     /**
      * The time when the dealer needs to reshuffle the deck due to turn timeout.
      */
-    private long reshuffleTime = Long.MAX_VALUE;
+    private volatile long reshuffleTime = Long.MAX_VALUE;
+
+    /**
+     * The reshuffle time the countdown display was last started with (dealer thread only).
+     */
+    private long displayedReshuffleTime = Long.MAX_VALUE;
+
+    /**
+     * The number of times a player tries to claim a set while some of its slots are claimed by others.
+     */
+    private static final int MAX_CLAIM_ATTEMPTS = 16;
+
+    /**
+     * The slot states and cards of the claim each player is making (used only by that player's thread, and kept
+     * between claims so a claim does not allocate).
+     */
+    private final long[][] claimStates;
+    private final int[][] claimCards;
 
     /** new
      * The thread representing the current player.
      */
     private Thread dealerThread;
 
+    /**
+     * The statistics of the current game, and who gets them when the game ends.
+     */
+    private final GameStatistics statistics;
+    private final List<GameRecorder> recorders = new CopyOnWriteArrayList<>();
+
+    /**
+     * The players ranked by score (updated by the players when they score).
+     */
+    private final Leaderboard leaderboard;
+
+    /**
+     * The copy of the table the dealer checks for sets (reused, dealer thread only).
+     */
+    private final Table.Snapshot snapshot = new Table.Snapshot();
+
+    /**
+     * The number of times a column was added to the table because there was no legal set on it (dealer thread only).
+     */
+    private int tableGrowths;
+
     public Dealer(Env env, Table table, Player[] players) {
         this.env = env;
         this.table = table;
         this.players = players;
         deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
+        // a card is collected at most once, so the statistics never grow during the game
+        statistics = new GameStatistics(players.length, env.config.deckSize / env.config.featureSize,
+                env.clock.currentTimeMillis(), System.currentTimeMillis());
+        leaderboard = new Leaderboard(players.length);
+        claimStates = new long[players.length][];
+        claimCards = new int[players.length][];
+    }
+
+    /**
+     * Adds a recorder that gets the statistics of the game when it ends.
+     *
+     * @param recorder - the recorder.
+     */
+    public void addRecorder(GameRecorder recorder) {
+        recorders.add(recorder);
+    }
+
+    /**
+     * @return - the players ranked by score.
+     */
+    public Leaderboard leaderboard() {
+        return leaderboard;
+    }
+
+    /**
+     * @return - the statistics of the current game.
+     */
+    public GameStatistics statistics() {
+        return statistics;
     }
 
     /**
@@ -57,18 +130,30 @@ public class Dealer implements Runnable {
     @Override
     public void run() {
         dealerThread = Thread.currentThread();
+        env.clock.register(dealerThread);
         env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
-        for(int i=0; i<players.length; i++){       //new for loop
-            Thread playerT = new Thread(players[i], "player " + (i+1));
-            playerT.start();
-        }
+        for(int i=0; i<players.length; i++)
+            env.threads.start(players[i], "player " + (i+1));
         while (!shouldFinish()) {
+            Object round = GameEvents.beginDealerRound();
+            int sets = statistics.sets();
             placeCardsOnTable();
             timerLoop();
+            boolean reshuffled = !terminate && env.clock.currentTimeMillis() >= reshuffleTime;
+            if (reshuffled) statistics.reshuffled();
             updateTimerDisplay(true);
-            removeAllCardsFromTable();
+            int cardsReturned = removeAllCardsFromTable();
+            if (reshuffled) GameEvents.reshuffle(cardsReturned, deck.size());
+            GameEvents.endDealerRound(round, statistics.sets() - sets, reshuffled, deck.size());
+            GameEvents.monitor(statistics.monitorStatistics());
+            GameEvents.monitor(table.slotMonitorStatistics());
         }
         announceWinners();
+        env.threads.shutdown(env.config.shutdownTimeoutMillis); // the player threads (and their computer threads)
+        env.logger.info("players waiting for cards were woken up " + table.slotWakeups() + " times.");
+        env.logger.info("a column was added to the table " + tableGrowths + " times.");
+        env.logger.info(statistics.monitorStatistics().toString());
+        env.logger.info(table.slotMonitorStatistics().toString());
         env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
     }
 
@@ -76,11 +161,11 @@ public class Dealer implements Runnable {
      * The inner loop of the dealer thread that runs as long as the countdown did not time out.
      */
     private void timerLoop() {
-        reshuffleTime = System.currentTimeMillis()+ env.config.turnTimeoutMillis;
+        reshuffleTime = env.clock.currentTimeMillis()+ env.config.turnTimeoutMillis;
         updateTimerDisplay(false);
-        while (!terminate && System.currentTimeMillis() < reshuffleTime) {
+        while (!terminate && env.clock.currentTimeMillis() < reshuffleTime && !noSetLeft()) {
             sleepUntilWokenOrTimeout();
-            updateTimerDisplay(!(System.currentTimeMillis() < reshuffleTime));
+            updateTimerDisplay(false);
             //removeCardsFromTable();
             placeCardsOnTable();
         }
@@ -103,7 +188,36 @@ public class Dealer implements Runnable {
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        return terminate || env.util.findSets(deck, 1).size() == 0;
+        return terminate || env.util.findSet(deck) == null;
+    }
+
+    /**
+     * @return true iff the deck is empty and there is no legal set among the cards on the table (so the game is over).
+     */
+    private boolean noSetLeft() {
+        return deck.isEmpty() && !setOnTable(table.snapshot(snapshot));
+    }
+
+    /**
+     * @param snapshot - the cards on the table.
+     * @return true iff there is a legal set among the cards on the table.
+     */
+    private boolean setOnTable(Table.Snapshot snapshot) {
+        List<Integer> cards = new ArrayList<>(env.config.maxTableSize);
+        for (int slot = 0; slot < snapshot.slots(); slot++)
+            if (snapshot.card(slot) != Table.EMPTY) cards.add(snapshot.card(slot));
+        return env.util.findSet(cards) != null;
+    }
+
+    /**
+     * @return true iff there is a legal set among the cards the dealer is dealing. A snapshot would wait for the
+     *         deal to end, but only the dealer changes the cards, so it reads them directly.
+     */
+    private boolean setOnTableWhileDealing() {
+        List<Integer> cards = new ArrayList<>(env.config.maxTableSize);
+        for (int card : table.getSlotToCard())
+            if (card != Table.EMPTY) cards.add(card);
+        return env.util.findSet(cards) != null;
     }
 
     /**
@@ -112,7 +226,7 @@ public class Dealer implements Runnable {
                                             /*private void removeCardsFromTable() {
                                                 // TODO implement
                                                 for (int slot = 0; slot < env.config.tableSize; slot++) {
-                                                    if(table.cardAtSlot(slot) != null)
+                                                    if(table.cardAtSlot(slot) != Table.EMPTY)
                                                         deck.add(table.cardAtSlot(slot));
                                                     table.removeCard(slot);
                                                 }
@@ -120,77 +234,121 @@ public class Dealer implements Runnable {
 
     /**
      * Check if any cards can be removed from the deck and placed on the table.
+     * If there is no legal set on the table, a column of cards is added (up to the maximal number of columns)
+     * rather than waiting for the reshuffle, and the added columns are removed again as sets are collected.
      */
-    private synchronized void placeCardsOnTable() {
+    private void placeCardsOnTable() {
         // TODO implement
         synchronized(table){
-            int numOfCards = table.countCards();
-            int slot = 0;
-            Integer[] board = table.getSlotToCard();
-            while(!deck.isEmpty() && numOfCards < board.length){
-                if(board[slot] == null){
-                    Random random = new Random();
-                    int randomIndex = random.nextInt(deck.size());
-                    int randomCard = deck.remove(randomIndex);
-                    table.placeCard(randomCard, slot);
-                    numOfCards++;
+            Random random = new Random();
+            int cards = table.countCards();
+            table.beginUpdate(); // snapshots see all the new cards or none of them
+            try {
+                shrinkTable(cards);
+                fillActiveSlots(random);
+                while (!deck.isEmpty() && table.activeSlots() < env.config.maxTableSize && !setOnTableWhileDealing()) {
+                    table.setActiveSlots(Math.min(table.activeSlots() + env.config.rows, env.config.maxTableSize));
+                    tableGrowths++;
+                    fillActiveSlots(random);
                 }
-                slot++;
+            } finally {
+                table.endUpdate();
             }
+            table.setNoMoreCards(deck.isEmpty());
         }
-        notifyAll();
+    }
+
+    private void fillActiveSlots(Random random) {
+        int[] board = table.getSlotToCard();
+        for (int slot = 0; slot < table.activeSlots() && !deck.isEmpty(); slot++)
+            if (board[slot] == Table.EMPTY)
+                table.placeCard(deck.remove(random.nextInt(deck.size())), slot);
     }
 
     /**
-     * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
+     * Removes the added columns the cards on the table do not need any more: their cards are moved to the empty
+     * slots of the other columns (with the tokens on them removed).
+     *
+     * @param cards - the number of cards on the table.
      */
-    private void sleepUntilWokenOrTimeout() {
-        // TODO implement
-        if(reshuffleTime-System.currentTimeMillis()<env.config.turnTimeoutWarningMillis){
-            try{
-                Thread.sleep(10);
-            } catch (InterruptedException ignored) {}
-        }
-        else{
-            try{
-                Thread.sleep(1000);
-            } catch (InterruptedException ignored) {}
+    private void shrinkTable(int cards) {
+        int active = table.activeSlots();
+        int tableSize = env.config.tableSize;
+        if (active <= tableSize) return;
+        int rows = env.config.rows;
+        int needed = tableSize + (Math.max(0, cards - tableSize) + rows - 1) / rows * rows;
+        int[] board = table.getSlotToCard();
+        int hole = 0;
+        int used = needed;
+        for (int slot = needed; slot < active; slot++) {
+            long state = table.slotState(slot);
+            if (Table.cardOf(state) == Table.EMPTY) continue;
+            if (!table.claim(players.length, slot, state)) { // a player is collecting it: keep its column for now
+                used = tableSize + (slot - tableSize) / rows * rows + rows;
+                continue;
+            }
+            while (board[hole] != Table.EMPTY) hole++; // there are at least as many holes as cards beyond needed
+            table.removeCard(slot);
+            table.placeCard(Table.cardOf(state), hole);
         }
+        table.setActiveSlots(Math.max(used, needed));
+    }
 
+    /**
+     * Sleep until the reshuffle time (at most a second, to check for termination) or until the thread is awakened
+     * for some purpose. The countdown display does not need the dealer to wake up.
+     */
+    private void sleepUntilWokenOrTimeout() {
+        // TODO implement
+        long remaining = reshuffleTime - env.clock.currentTimeMillis();
+        if (remaining <= 0) return;
+        try {
+            env.clock.sleep(Math.min(remaining, 1000));
+        } catch (InterruptedException ignored) {}
     }
 
     /**
-     * Reset and/or update the countdown and the countdown display.
+     * Reset the countdown display, or start it again if the reshuffle time changed since it was last started
+     * (the user interface counts down by itself).
      */
     private void updateTimerDisplay(boolean reset) {
         // TODO implement
         if(reset){
+            displayedReshuffleTime = Long.MAX_VALUE;
             env.ui.setCountdown(env.config.turnTimeoutMillis, false);
         }
         else{
-            long currentTimer = reshuffleTime-System.currentTimeMillis();
-            env.ui.setCountdown(currentTimer, currentTimer<=env.config.turnTimeoutWarningMillis);
+            long reshuffleTime = this.reshuffleTime;
+            if (reshuffleTime == displayedReshuffleTime) return;
+            displayedReshuffleTime = reshuffleTime;
+            env.ui.startCountdown(Math.max(0, reshuffleTime - env.clock.currentTimeMillis()), env.config.turnTimeoutWarningMillis);
         }
-            
     }
 
     /**
      * Returns all the cards from the table to the deck.
+     *
+     * @return - the number of cards returned.
      */
-    private void removeAllCardsFromTable() {
+    private int removeAllCardsFromTable() {
+        int returned = 0;
         // TODO implement
-        for(int slot=0; slot<env.config.tableSize; slot++){
-            if(table.cardAtSlot(slot) != null){
-                deck.add(table.cardAtSlot(slot));
-                table.removeCard(slot);
-                for(int i=0; i<table.playerTokens[slot].length; i++){
-                    if(table.removeToken(i, slot)){
-                        players[i].decreaseCounter();
-                    }
+        table.beginUpdate(); // snapshots never see a half cleared table
+        try {
+            for(int slot=0; slot<table.activeSlots(); slot++){
+                long state = table.slotState(slot);
+                // the cards a player is collecting right now are skipped (the player removes them)
+                if(table.claim(players.length, slot, state)){ // the dealer claims as the player after the last one
+                    deck.add(Table.cardOf(state));
+                    table.removeCard(slot);
+                    returned++;
                 }
             }
-            
+        } finally {
+            table.endUpdate();
         }
+        if (!deck.isEmpty()) table.setNoMoreCards(false); // the players wait for the cards dealt next
+        return returned;
     }
 
     /**
@@ -198,67 +356,103 @@ public class Dealer implements Runnable {
      */
     private void announceWinners() {
         // TODO implement
-        int maxScore = 0;
-        int amount = 0;
-        for(Player player : players){
-            player.terminate();
-            if(player.score()> maxScore){
-                maxScore = player.score();
-                amount = 1;
-            }
-            else if(player.score() == maxScore)    
-                amount++;
-        }
-        int[] winners = new int[amount];
-        int index = 0;
-        for(Player player : players){
-            if(player.score()== maxScore){
-                winners[index]= player.id;
-                index++;
-            }
-        }
+        terminate(); // no more points
+        int[] winners = leaderboard.winners();
+        statistics.finish(env.clock.currentTimeMillis(), System.currentTimeMillis(), deck.size(), leaderboard.scores());
+        recordGame();
         env.ui.announceWinner(winners);
-        terminate();
     }
 
-    public void checkSet(int playerID) {  //new function
-            if(players[playerID].getCounter() == 3){
-                int[] set = new int[3];
-                int j=0;
-                for(int i = 0 ; i< env.config.tableSize; i++){
-                    if(table.playerTokens[i][playerID]){
-                        set[j] = table.slotToCard[i];
-                        j++;
-                    }
-                }
-                if(env.util.testSet(set)){
-                    correctSet(set, playerID);
-                    dealerThread.interrupt();
+    /**
+     * Hands the statistics of the game to the recorders, on a thread of their own: the players still running may
+     * interrupt the dealer thread (see collectSet), and an interrupt closes the file channels the recorders write to.
+     * The interrupts the dealer gets meanwhile only asked it to place cards, so they are dropped.
+     */
+    private void recordGame() {
+        if (recorders.isEmpty()) return;
+        Thread recorderThread = env.threads.start(() -> {
+            for (GameRecorder recorder : recorders)
+                try {
+                    recorder.record(statistics);
+                } catch (RuntimeException e) {
+                    env.logger.severe("cannot record the game: " + e);
                 }
-                else
-                    incorrectSet(playerID);
-            }
+        }, "recorder");
+        while (recorderThread.isAlive())
+            try {
+                recorderThread.join();
+            } catch (InterruptedException ignored) {}
     }
 
-    private void correctSet(int[] set, int playerID){   //new function
-        for(int card : set){
-            int slot = table.cardToSlot[card];
-            table.removeCard(slot);
-            for(int i=0; i<table.playerTokens[slot].length; i++){
-                if(table.removeToken(i, slot)){
-                    players[i].decreaseCounter();
+    /**
+     * Checks the set a player marked with three tokens, and collects its cards if it is legal, without locking the
+     * table: the set is checked on a snapshot of the three slot states, and its cards are collected by claiming the
+     * three slots at once, which fails if any of them changed (or was claimed) since the snapshot.
+     * Can be called by several player threads at once, and only one of the players that marked the same card
+     * collects it. The caller is responsible for awarding the point or penalizing the player.
+     *
+     * @param playerID - the player who placed a third token.
+     * @param slots    - the three slots with the player's tokens.
+     * @return - the verdict.
+     */
+    public Verdict claimSet(int playerID, int[] slots) {
+        long[] states = claimStates[playerID];
+        int[] cards = claimCards[playerID];
+        if (states == null || states.length != slots.length) { // only on the player's first claim
+            states = claimStates[playerID] = new long[slots.length];
+            cards = claimCards[playerID] = new int[slots.length];
+        }
+        for (int attempt = 1; ; attempt++) {
+            boolean transientConflict = false;
+            for (int i = 0; i < slots.length; i++) {
+                long state = table.slotState(slots[i]);
+                if (attempt > 1 && Table.versionOf(state) != Table.versionOf(states[i]))
+                    return Verdict.LOST; // a card changed since the previous attempt
+                states[i] = state;
+                cards[i] = Table.cardOf(state);
+                if (cards[i] == Table.EMPTY) return Verdict.LOST;
+                // removeCard clears the tokens after it changes the version, so if the card in the slot is not the
+                // one the player marked, its token is gone (and the player is not penalized for a card it did not pick)
+                if (!table.containPlayerToken(playerID, slots[i])) return Verdict.LOST;
+                if (Table.ownerOf(state) != Table.NOBODY) transientConflict = true;
+            }
+            if (!transientConflict) {
+                if (!env.util.testSet(cards)) {
+                    statistics.penalty(playerID);
+                    return Verdict.ILLEGAL;
+                }
+                if (table.claim(playerID, slots, states)) {
+                    collectSet(slots);
+                    return Verdict.LEGAL;
                 }
             }
+            // another claim holds one of the slots: wait for it to be collected or released
+            if (attempt == MAX_CLAIM_ATTEMPTS) return Verdict.LOST;
+            Thread.yield();
         }
-        players[playerID].point();
-        reshuffleTime = System.currentTimeMillis()+ env.config.turnTimeoutMillis;
     }
 
-    private void incorrectSet(int playerID){    //new function
-        Thread penaltyPlayer = new Thread(() -> {
-            players[playerID].penalty();
-            }
-        );
-        penaltyPlayer.start();
+    /**
+     * Removes the cards of a legal set from the table (the slots are claimed by the caller).
+     */
+    private void collectSet(int[] slots) {
+        for (int slot : slots)
+            table.removeCard(slot);
+        statistics.setFound(env.clock.currentTimeMillis());
+        reshuffleTime = env.clock.currentTimeMillis() + env.config.turnTimeoutMillis;
+        Thread dealerThread = this.dealerThread;
+        if (dealerThread != null) dealerThread.interrupt(); // so it places new cards
+    }
+
+    /**
+     * The result of claiming a set.
+     */
+    public enum Verdict {
+        /** the set is legal and its cards were collected by the player */
+        LEGAL,
+        /** the set is not legal */
+        ILLEGAL,
+        /** another player (or the dealer) took one of the cards first */
+        LOST
     }
 }
@@ -0,0 +1,209 @@
+package bguspl.set.ex;
+
+import bguspl.set.OverflowPolicy;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free queue of the key presses (slots) a player has not handled yet.
+ * There is a single producer (the input thread of a human player or the computer player thread) and a single
+ * consumer (the player thread). Offering a press never blocks: when the ring is full the overflow policy decides
+ * which press is dropped. Slots are kept in a primitive array so no press is ever boxed.
+ *
+ * @inv 0 <= tail - head <= capacity
+ */
+public class InputRing {
+
+    /**
+     * The value returned by poll and take when no press is available.
+     */
+    public static final int EMPTY = -1;
+
+    /**
+     * The pending slots (indexed by sequence number modulo the capacity).
+     */
+    private final int[] slots;
+
+    /**
+     * What to do with a press when the ring is full.
+     */
+    private final OverflowPolicy policy;
+
+    /**
+     * The sequence number of the next press to consume (advanced by the consumer, or by the producer when it drops
+     * the oldest press).
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The sequence number of the next press to produce (advanced by the producer only).
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The number of presses dropped because the ring was full (either the new press or the oldest one).
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * The number of presses dropped because the same slot was already pending.
+     */
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * The threads currently parked waiting for a press (consumer) or for free space (producer), if any.
+     */
+    private volatile Thread consumer;
+    private volatile Thread producer;
+
+    /**
+     * True iff the ring was closed (all waiting threads are released and no more presses are accepted).
+     */
+    private volatile boolean closed;
+
+    /**
+     * @param capacity - the maximum number of pending presses.
+     * @param policy   - what to do with a press when the ring is full.
+     */
+    public InputRing(int capacity, OverflowPolicy policy) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.slots = new int[capacity];
+        this.policy = policy;
+    }
+
+    /**
+     * Adds a press to the ring without blocking (producer side).
+     *
+     * @param slot - the slot that was pressed.
+     * @return - true iff the press was added.
+     *
+     * @post - if the ring was full and the policy is DROP_OLDEST, the oldest pending press is dropped.
+     */
+    public boolean offer(int slot) {
+        if (closed) return false;
+        long t = tail.get();
+        long h = head.get();
+        if (policy == OverflowPolicy.COALESCE && isPending(slot, h, t)) {
+            coalesced.incrementAndGet();
+            return false;
+        }
+        if (t - h >= slots.length) {
+            if (policy != OverflowPolicy.DROP_OLDEST) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            // if the consumer wins the race for the oldest press there is room anyway
+            if (head.compareAndSet(h, h + 1)) dropped.incrementAndGet();
+        }
+        slots[(int) (t % slots.length)] = slot;
+        tail.set(t + 1);
+
+        Thread waiting = consumer;
+        if (waiting != null) LockSupport.unpark(waiting);
+        return true;
+    }
+
+    /**
+     * Removes the oldest pending press without blocking (consumer side).
+     *
+     * @return - the slot that was pressed, or EMPTY if there are no pending presses.
+     */
+    public int poll() {
+        while (true) {
+            long h = head.get();
+            if (h == tail.get()) return EMPTY;
+            int slot = slots[(int) (h % slots.length)];
+            if (head.compareAndSet(h, h + 1)) { // otherwise the producer dropped this press, try the next one
+                Thread waiting = producer;
+                if (waiting != null) LockSupport.unpark(waiting);
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest pending press, waiting for one if necessary (consumer side).
+     *
+     * @return - the slot that was pressed, or EMPTY if the ring was closed or the thread was interrupted.
+     */
+    public int take() {
+        int slot;
+        while ((slot = poll()) == EMPTY) {
+            if (closed || Thread.interrupted()) return EMPTY;
+            consumer = Thread.currentThread();
+            if (size() == 0 && !closed) LockSupport.park(this);
+            consumer = null;
+        }
+        return slot;
+    }
+
+    /**
+     * Waits until there is room for another press (producer side). Used by producers that should be paced by the
+     * consumer rather than lose presses.
+     *
+     * @return - true iff there is room, false if the ring was closed or the thread was interrupted.
+     */
+    public boolean awaitSpace() {
+        while (size() >= slots.length) {
+            if (closed || Thread.interrupted()) return false;
+            producer = Thread.currentThread();
+            if (size() >= slots.length && !closed) LockSupport.park(this);
+            producer = null;
+        }
+        return !closed;
+    }
+
+    /**
+     * Discards all pending presses (consumer side).
+     */
+    public void clear() {
+        while (poll() != EMPTY) ;
+    }
+
+    /**
+     * Rejects all future presses and releases the waiting threads.
+     */
+    public void close() {
+        closed = true;
+        Thread waiting = consumer;
+        if (waiting != null) LockSupport.unpark(waiting);
+        waiting = producer;
+        if (waiting != null) LockSupport.unpark(waiting);
+    }
+
+    /**
+     * @return - the number of pending presses.
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * @return - the maximum number of pending presses.
+     */
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * @return - the number of presses dropped because the ring was full.
+     */
+    public long droppedPresses() {
+        return dropped.get();
+    }
+
+    /**
+     * @return - the number of presses dropped because the same slot was already pending.
+     */
+    public long coalescedPresses() {
+        return coalesced.get();
+    }
+
+    private boolean isPending(int slot, long from, long to) {
+        for (long i = from; i < to; ++i)
+            if (slots[(int) (i % slots.length)] == slot)
+                return true;
+        return false;
+    }
+}
@@ -1,11 +1,11 @@
 package bguspl.set.ex;
 
-import java.util.Queue;
-import java.util.Random;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
 
+import bguspl.set.CpuBudget;
 import bguspl.set.Env;
+import bguspl.set.GameEvents;
+import bguspl.set.TokenBucket;
 
 /**
  * This class manages the players' threads and data
@@ -33,7 +33,7 @@ public class Player implements Runnable {
     /**
      * The thread representing the current player.
      */
-    private Thread playerThread;
+    private volatile Thread playerThread;
 
     /**
      * The thread of the AI (computer) player (an additional thread used to generate key presses).
@@ -55,13 +55,25 @@ public class Player implements Runnable {
      */
     private int score;
 
-    //new
-    private ArrayBlockingQueue<Integer> actionsQueue = new ArrayBlockingQueue<>(3);
+    /**
+     * The key presses (slots) the player did not handle yet.
+     */
+    private final InputRing actions;
 
-    private volatile int counter;
+    /**
+     * The slots of the player's tokens when it claims a set.
+     */
+    private final int[] claimSlots = new int[3];
 
     private volatile boolean frozen;
 
+    /**
+     * The key presses the computer player made, and how many of them waited for the press rate or the CPU budget
+     * (written by the computer player thread only).
+     */
+    private volatile long computerPresses;
+    private volatile long throttledPresses;
+
     private Dealer dealer;
     /**
      * The class constructor.
@@ -78,8 +90,7 @@ public class Player implements Runnable {
         this.table = table;
         this.id = id;
         this.human = human;
-        actionsQueue = new ArrayBlockingQueue<>(3);
-        this.counter = 0;
+        this.actions = new InputRing(env.config.inputQueueCapacity, env.config.inputOverflowPolicy);
         this.frozen = false;
     }
 
@@ -89,36 +100,42 @@ public class Player implements Runnable {
     @Override
     public void run() {
         playerThread = Thread.currentThread();
+        env.clock.register(playerThread);
         env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
         if (!human) createArtificialIntelligence();
 
         while (!terminate) {
             // TODO implement main player loop
-            Integer slotAction = null;
-            try {
-                    slotAction = actionsQueue.take();
-            } catch (InterruptedException ignored) {}
-            while(table.cardAtSlot(slotAction) == null){
-                synchronized(dealer){
-                    try{dealer.wait();
-                    }catch (InterruptedException ignored) {}
-                }
-            }
-            synchronized (table){
-                if (table.containPlayerToken(id, slotAction)){
-                    table.removeToken(id, slotAction);
-                    counter--;
-                }
-                else if (counter != 3){
-                    table.placeToken(id,slotAction);
-                    counter++;
-                    if (counter == 3) {
-                        dealer.checkSet(id);
-                    }
-                }
+            int slotAction = actions.take();
+            if (slotAction == InputRing.EMPTY || slotAction >= table.activeSlots()) continue; // not a slot in use
+            if (!table.awaitCard(slotAction)) continue;
+            long start = System.nanoTime();
+            long state = table.slotState(slotAction);
+            if (Table.cardOf(state) == Table.EMPTY || Table.ownerOf(state) != Table.NOBODY)
+                continue; // the card is gone (or being collected) since awaitCard
+            if (table.removeToken(id, slotAction)) continue;
+            if (table.playerTokens(id, claimSlots) >= claimSlots.length) continue;
+            table.placeToken(id, slotAction);
+            if (table.slotState(slotAction) != state) {
+                table.removeToken(id, slotAction); // the card changed while the token was placed
+                continue;
             }
+            if (table.playerTokens(id, claimSlots) != claimSlots.length) continue;
+
+            Dealer.Verdict verdict = dealer.claimSet(id, claimSlots);
+            long latency = System.nanoTime() - start;
+            dealer.statistics().claimChecked(latency);
+            GameEvents.claim(id, verdict.name(), latency);
+            if (verdict == Dealer.Verdict.LOST) continue; // another player took one of the cards first
+            // freeze, and ignore the key presses made while frozen
+            if (verdict == Dealer.Verdict.LEGAL) point();
+            else penalty();
+            actions.clear();
         }    
         if (!human) try { aiThread.join(); } catch (InterruptedException ignored) {}
+        if (droppedPresses() > 0)
+            env.logger.info("player " + (id + 1) + " dropped " + actions.droppedPresses() + " key presses (queue full) and "
+                    + actions.coalescedPresses() + " repeated key presses.");
         env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
     }
     
@@ -126,21 +143,39 @@ public class Player implements Runnable {
     /**
      * Creates an additional thread for an AI (computer) player. The main loop of this thread repeatedly generates
      * key presses. If the queue of key presses is full, the thread waits until it is not full.
+     * The presses are limited to the configured rate, and to the CPU budget of all the computer players (which
+     * counts the CPU time of this thread and of the player thread that handles its presses).
+     * The presses go through the same non-blocking path as the presses of a human player.
      */
     private void createArtificialIntelligence() {
         // note: this is a very, very smart AI (!)
-        aiThread = new Thread(() -> {
+        TokenBucket pressRate = new TokenBucket(env.clock, env.config.computerPressesPerSecond, env.config.computerPressBurst);
+        CpuBudget cpuBudget = env.computerCpu;
+        aiThread = env.threads.start(() -> {
+            env.clock.register(Thread.currentThread());
             env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
+            long cpuNanos = cpuBudget.limited() ? CpuBudget.cpuNanos(Thread.currentThread(), playerThread) : 0;
             while (!terminate) {
-                Random randomNumber = new Random();
+                if (!actions.awaitSpace()) continue;
+                boolean throttled;
                 try {
-                    actionsQueue.put(randomNumber.nextInt(env.config.tableSize));
-                } catch (InterruptedException ignored) {} //generate a random key press
-                
+                    throttled = pressRate.acquire();
+                    if (cpuBudget.limited()) {
+                        long used = CpuBudget.cpuNanos(Thread.currentThread(), playerThread);
+                        throttled |= cpuBudget.charge(used - cpuNanos);
+                        cpuNanos = used;
+                    }
+                } catch (InterruptedException e) {
+                    continue; // the game ends
+                }
+                if (terminate) break;
+                press(ThreadLocalRandom.current().nextInt(table.activeSlots())); //generate a random key press
+                computerPresses++;
+                if (throttled) throttledPresses++;
             }
-            env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
+            env.logger.info("thread " + Thread.currentThread().getName() + " terminated after " + computerPresses
+                    + " key presses (" + throttledPresses + " throttled).");
         }, "computer-" + id);
-        aiThread.start();
     }
 
     /**
@@ -149,6 +184,8 @@ public class Player implements Runnable {
     public void terminate() {
         // TODO implement
         terminate = true;
+        actions.close();
+        if (playerThread != null) playerThread.interrupt(); // in case it waits for a card
     }
 
     /**
@@ -158,11 +195,40 @@ public class Player implements Runnable {
      */
     public void keyPressed(int slot) {
         // TODO implement
-        if(human){
-            try {
-                actionsQueue.put(slot);
-            } catch (InterruptedException ignored) {}
-        }
+        if(human)
+            press(slot);
+    }
+
+    /**
+     * Queues a key press for the player thread without ever blocking the caller.
+     * If the queue is full, the press is dropped according to the configured overflow policy.
+     *
+     * @param slot - the slot corresponding to the key pressed.
+     * @return - true iff the press was queued.
+     */
+    private boolean press(int slot) {
+        return actions.offer(slot);
+    }
+
+    /**
+     * @return - the number of key presses the computer player made (0 for a human player).
+     */
+    public long computerPresses() {
+        return computerPresses;
+    }
+
+    /**
+     * @return - the number of key presses of the computer player that waited for the press rate or the CPU budget.
+     */
+    public long throttledPresses() {
+        return throttledPresses;
+    }
+
+    /**
+     * @return - the number of key presses of this player that were dropped because too many were pending.
+     */
+    public long droppedPresses() {
+        return actions.droppedPresses() + actions.coalescedPresses();
     }
 
     /**
@@ -174,13 +240,15 @@ public class Player implements Runnable {
     public void point() {
         // TODO implement
         this.score++;
-        
+        dealer.leaderboard().setScore(id, score);
         env.ui.setScore(id, score);
+        Object freeze = GameEvents.beginFreeze(id, false);
         frozen = true;
         try{    
-            Thread.sleep(env.config.pointFreezeMillis);
+            env.clock.sleep(env.config.pointFreezeMillis);
         } catch (InterruptedException ignored) {}
         frozen = false;
+        GameEvents.end(freeze);
         int ignored = table.countCards(); // this part is just for demonstration in the unit tests
 
     }
@@ -190,26 +258,21 @@ public class Player implements Runnable {
      */
     public void penalty() {
         // TODO implement
-        long endFreezeTime = System.currentTimeMillis()+env.config.penaltyFreezeMillis;
+        Object freeze = GameEvents.beginFreeze(id, true);
+        long endFreezeTime = env.clock.currentTimeMillis()+env.config.penaltyFreezeMillis;
         env.ui.setFreeze(id, env.config.penaltyFreezeMillis);
-        while(System.currentTimeMillis()<endFreezeTime){
+        long remaining;
+        while(!terminate && (remaining = endFreezeTime-env.clock.currentTimeMillis()) > 0){
             try{    
-                Thread.sleep(1000);
+                env.clock.sleep(Math.min(1000, remaining)); // short freezes end on time
             } catch (InterruptedException ignored) {}
-            env.ui.setFreeze(id, endFreezeTime-System.currentTimeMillis());
+            env.ui.setFreeze(id, endFreezeTime-env.clock.currentTimeMillis());
         }
+        GameEvents.end(freeze);
 
     }
 
     public int score() {
         return score;
     }
-
-    public void decreaseCounter(){
-        counter--;
-    }
-
-    public int getCounter(){
-        return counter;
-    }
 }
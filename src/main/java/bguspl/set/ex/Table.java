@@ -1,16 +1,24 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.GameEvents;
+import bguspl.set.MonitorStatistics;
+import bguspl.set.UserInterface;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 import java.util.stream.Collectors;
 
 /**
  * This class contains the data that is visible to the player.
  *
  * @inv slotToCard[x] == y iff cardToSlot[y] == x
+ * @inv slotToCard[x] == EMPTY iff there is no card in slot x
+ * @inv cardOf(slotState(x)) == slotToCard[x]
+ * @inv writesFinished.get() <= writesStarted.get()
  */
 public class Table {
 
@@ -20,33 +28,109 @@ public class Table {
     private final Env env;
 
     /**
-     * Mapping between a slot and the card placed in it (null if none).
+     * The value of an empty slot in slotToCard and of a card that is not on the table in cardToSlot.
      */
-    protected final Integer[] slotToCard; // card per slot (if any)
+    public static final int EMPTY = -1;
 
     /**
-     * Mapping between a card and the slot it is in (null if none).
+     * The owner of a slot that nobody claimed.
      */
-    protected final Integer[] cardToSlot; // slot per card (if any)
+    public static final int NOBODY = -1;
 
-    //new
-    public volatile Boolean[][] playerTokens; //keep track of player tokens on the table
+    /**
+     * Mapping between a slot and the card placed in it (EMPTY if none).
+     */
+    protected final int[] slotToCard; // card per slot (if any)
+
+    /**
+     * Mapping between a card and the slot it is in (EMPTY if none).
+     */
+    protected final int[] cardToSlot; // slot per card (if any)
+
+    /**
+     * The state of each slot in a single word, so it can be read and claimed atomically: a version that changes
+     * whenever the card in the slot changes (bits 32-63), the card (bits 16-31, plus one) and the player (or
+     * dealer) that claimed the slot to remove its card (bits 0-15, plus one).
+     * A card is only removed from a slot by whoever claimed it, so a successful claim means the card is still
+     * there and nobody else will take it.
+     */
+    protected final AtomicLongArray slotStates;
+
+    /**
+     * The player tokens on the table, as a bitmask of players per slot (tokenWords longs for each slot).
+     */
+    protected final AtomicLongArray tokens;
+
+    /**
+     * The number of longs in the tokens bitmask of a single slot.
+     */
+    private final int tokenWords;
+
+    /**
+     * The monitors players wait on until a card is placed in an empty slot (one per slot, so placing a card only
+     * wakes the players that wait for that slot).
+     */
+    private final Object[] slotMonitors;
+
+    /**
+     * The contention of the slot monitors (all slots together).
+     */
+    private final MonitorStatistics slotMonitorStatistics = new MonitorStatistics("table slots");
+
+    /**
+     * The number of times a player waiting for a card was woken up.
+     */
+    private final AtomicLong slotWakeups = new AtomicLong();
+
+    /**
+     * The number of changes to the cards and tokens started and finished, so readers can take a consistent
+     * snapshot without locking (a seqlock that allows concurrent writers): a copy is consistent iff no change was
+     * in progress when it started and none started until it ended. A writer only pays two atomic additions.
+     */
+    private final AtomicLong writesStarted = new AtomicLong();
+    private final AtomicLong writesFinished = new AtomicLong();
+
+    /**
+     * The number of failed attempts after which a snapshot stops spinning and sleeps between attempts.
+     */
+    private static final int SNAPSHOT_SPINS = 64;
+
+    /**
+     * The number of snapshot attempts that failed because of a concurrent change.
+     */
+    private final AtomicLong snapshotRetries = new AtomicLong();
+
+    /**
+     * True iff the dealer has no more cards to place (so nobody should wait for an empty slot).
+     */
+    private volatile boolean noMoreCards;
+
+    /**
+     * The number of slots in use: the slots of the grid, and the slots of the columns the dealer added because
+     * there was no legal set on the table (slots from here on are empty, and key presses on them are ignored).
+     */
+    private volatile int activeSlots;
 
     /**
      * Constructor for testing.
      *
      * @param env        - the game environment objects.
-     * @param slotToCard - mapping between a slot and the card placed in it (null if none).
-     * @param cardToSlot - mapping between a card and the slot it is in (null if none).
+     * @param slotToCard - mapping between a slot and the card placed in it (EMPTY if none).
+     * @param cardToSlot - mapping between a card and the slot it is in (EMPTY if none).
      */
-    public Table(Env env, Integer[] slotToCard, Integer[] cardToSlot) {
+    public Table(Env env, int[] slotToCard, int[] cardToSlot) {
         this.env = env;
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
-        this.playerTokens = new Boolean[env.config.tableSize][env.config.players];
-        for (int i = 0; i < env.config.tableSize; i++) {
-            Arrays.fill(playerTokens[i], false);
-        }
+        this.tokenWords = (env.config.players + Long.SIZE - 1) / Long.SIZE;
+        this.tokens = new AtomicLongArray(slotToCard.length * tokenWords);
+        this.slotStates = new AtomicLongArray(slotToCard.length);
+        for (int slot = 0; slot < slotToCard.length; slot++)
+            slotStates.set(slot, state(0, slotToCard[slot], NOBODY));
+        this.slotMonitors = new Object[slotToCard.length];
+        for (int i = 0; i < slotMonitors.length; i++)
+            slotMonitors[i] = new Object();
+        this.activeSlots = Math.min(env.config.tableSize, slotToCard.length);
     }
 
     /**
@@ -55,37 +139,47 @@ public class Table {
      * @param env - the game environment objects.
      */
     public Table(Env env) {
-        this(env, new Integer[env.config.tableSize], new Integer[env.config.deckSize]);
-        this.playerTokens = new Boolean[env.config.tableSize][env.config.players];
-        for (int i = 0; i < env.config.tableSize; i++) {
-            Arrays.fill(playerTokens[i], false);
-        }
+        this(env, emptyArray(env.config.maxTableSize), emptyArray(env.config.deckSize));
+    }
+
+    private static int[] emptyArray(int length) {
+        int[] array = new int[length];
+        Arrays.fill(array, EMPTY);
+        return array;
     }
 
     /**
      * This method prints all possible legal sets of cards that are currently on the table.
      */
     public void hints() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
+        Snapshot snapshot = snapshot(new Snapshot());
+        List<Integer> deck = Arrays.stream(snapshot.cards).filter(card -> card != EMPTY).boxed().collect(Collectors.toList());
         env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
             StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
-            List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
+            List<Integer> slots = Arrays.stream(set).mapToObj(snapshot::slotOf).sorted().collect(Collectors.toList());
             int[][] features = env.util.cardsToFeatures(set);
             System.out.println(sb.append("slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features)));
         });
     }
 
     /**
-     * Count the number of cards currently on the table.
+     * Count the number of cards currently on the table, as they were at a single point in time (like a snapshot,
+     * without copying the table). Must not be called inside an update of the calling thread (see beginUpdate).
      *
      * @return - the number of cards on the table.
      */
     public int countCards() {
-        int cards = 0;
-        for (Integer card : slotToCard)
-            if (card != null)
-                ++cards;
-        return cards;
+        for (int attempt = 1; ; attempt++) {
+            long before = writesStarted.get();
+            if (writesFinished.get() == before) {
+                int cards = 0;
+                for (int card : slotToCard)
+                    if (card != EMPTY)
+                        ++cards;
+                if (writesStarted.get() == before) return cards;
+            }
+            backOff(attempt);
+        }
     }
 
     /**
@@ -97,30 +191,201 @@ public class Table {
      */
     public void placeCard(int card, int slot) {
         try {
-            Thread.sleep(env.config.tableDelayMillis);
+            env.clock.sleep(env.config.tableDelayMillis);
         } catch (InterruptedException ignored) {}
 
+        beginUpdate();
         cardToSlot[card] = slot;
         slotToCard[slot] = card;
+        slotStates.set(slot, state(versionOf(slotStates.get(slot)) + 1, card, NOBODY));
+        endUpdate();
+        GameEvents.cardDealt(card, slot);
 
         // TODO implement
         env.ui.placeCard(card, slot);
+        long requested = System.nanoTime();
+        synchronized (slotMonitors[slot]) {
+            long entered = slotMonitorStatistics.entered(requested);
+            slotMonitors[slot].notifyAll();
+            slotMonitorStatistics.exited(entered);
+        }
     }
 
     /**
-     * Removes a card from a grid slot on the table.
+     * Waits until there is a card in a slot.
+     * Only placing a card in this slot (or running out of cards, or removing the slot's column) wakes the waiting
+     * thread up.
+     *
+     * @param slot - the slot to wait for.
+     * @return     - true iff there is a card in the slot, false if the thread was interrupted while waiting, there
+     *               are no more cards to place or the slot is not in use.
+     */
+    public boolean awaitCard(int slot) {
+        Object monitor = slotMonitors[slot];
+        long requested = System.nanoTime();
+        synchronized (monitor) {
+            long entered = slotMonitorStatistics.entered(requested);
+            while (slotToCard[slot] == EMPTY && !noMoreCards && slot < activeSlots) {
+                slotMonitorStatistics.exited(entered); // waiting releases the monitor
+                try {
+                    monitor.wait();
+                } catch (InterruptedException e) {
+                    return false;
+                }
+                entered = System.nanoTime();
+                slotWakeups.incrementAndGet();
+            }
+            slotMonitorStatistics.exited(entered);
+            return slotToCard[slot] != EMPTY;
+        }
+    }
+
+    /**
+     * Called by the dealer when its deck becomes empty, and again when cards return to it (on a reshuffle).
+     * While the deck is empty, the players waiting for an empty slot are woken up, since no card will be placed
+     * there.
+     *
+     * @param noMoreCards - true iff the deck is empty.
+     */
+    public void setNoMoreCards(boolean noMoreCards) {
+        this.noMoreCards = noMoreCards;
+        if (!noMoreCards) return;
+        for (Object monitor : slotMonitors)
+            synchronized (monitor) {
+                monitor.notifyAll();
+            }
+    }
+
+    /**
+     * @return - the number of slots in use (from tableSize, up to maxTableSize when columns were added).
+     */
+    public int activeSlots() {
+        return activeSlots;
+    }
+
+    /**
+     * Called by the dealer to add columns to the grid or remove them (the removed slots should be empty): wakes up
+     * the players waiting for a card in a removed slot.
+     *
+     * @param slots - the number of slots in use.
+     */
+    public void setActiveSlots(int slots) {
+        int removed = activeSlots;
+        activeSlots = slots;
+        for (int slot = slots; slot < removed; slot++)
+            synchronized (slotMonitors[slot]) {
+                slotMonitors[slot].notifyAll();
+            }
+    }
+
+    /**
+     * @return - the number of times a thread waiting in awaitCard was woken up.
+     */
+    public long slotWakeups() {
+        return slotWakeups.get();
+    }
+
+    /**
+     * @return - the contention statistics of the slot monitors (entered by the players waiting for a card and by
+     *           placeCard).
+     */
+    public MonitorStatistics slotMonitorStatistics() {
+        return slotMonitorStatistics;
+    }
+
+    /**
+     * Removes a card from a grid slot on the table, with all the tokens on it.
+     * The caller should have claimed the slot (unless nobody else can claim it).
      * @param slot - the slot from which to remove the card.
      */
     public void removeCard(int slot) {
         try {
-            Thread.sleep(env.config.tableDelayMillis);
+            env.clock.sleep(env.config.tableDelayMillis);
         } catch (InterruptedException ignored) {}
 
         // TODO implement
-        cardToSlot[slotToCard[slot]] = null;
-        slotToCard[slot] = null;
+        beginUpdate();
+        int card = slotToCard[slot];
+        slotStates.set(slot, state(versionOf(slotStates.get(slot)) + 1, EMPTY, NOBODY));
+        // after the new version is visible, so a token placed on the old card is either cleared here or noticed
+        for (int word = 0; word < tokenWords; word++)
+            tokens.set(slot * tokenWords + word, 0L);
+        // before the slot looks empty to the dealer, so the removal is never displayed after the card it places there
         env.ui.removeTokens(slot);
         env.ui.removeCard(slot);
+        if (card != EMPTY) cardToSlot[card] = EMPTY;
+        slotToCard[slot] = EMPTY;
+        endUpdate();
+        if (card != EMPTY) GameEvents.cardRemoved(card, slot);
+    }
+
+    /**
+     * @param slot - the slot to look at.
+     * @return     - the state of the slot (see cardOf, ownerOf and versionOf).
+     */
+    public long slotState(int slot) {
+        return slotStates.get(slot);
+    }
+
+    /**
+     * @param state - a slot state.
+     * @return      - the card in the slot, or EMPTY if none.
+     */
+    public static int cardOf(long state) {
+        return (int) (state >>> 16 & 0xFFFF) - 1;
+    }
+
+    /**
+     * @param state - a slot state.
+     * @return      - the player (or dealer) that claimed the slot, or NOBODY.
+     */
+    public static int ownerOf(long state) {
+        return (int) (state & 0xFFFF) - 1;
+    }
+
+    /**
+     * @param state - a slot state.
+     * @return      - the version of the slot (changes whenever its card changes).
+     */
+    public static int versionOf(long state) {
+        return (int) (state >>> 32);
+    }
+
+    private static long state(int version, int card, int owner) {
+        return (long) version << 32 | (long) (card + 1 & 0xFFFF) << 16 | owner + 1 & 0xFFFF;
+    }
+
+    /**
+     * Claims a slot if its state did not change since it was read.
+     *
+     * @param owner - the claiming player (or the dealer).
+     * @param slot  - the slot.
+     * @param state - the state of the slot when it was read (with a card, and not claimed).
+     * @return      - true iff the slot was claimed.
+     */
+    public boolean claim(int owner, int slot, long state) {
+        return ownerOf(state) == NOBODY && cardOf(state) != EMPTY
+                && slotStates.compareAndSet(slot, state, state(versionOf(state), cardOf(state), owner));
+    }
+
+    /**
+     * Claims several slots, all or none: if one of them changed since it was read, the ones already claimed are
+     * released (without changing their version).
+     *
+     * @param owner  - the claiming player (or the dealer).
+     * @param slots  - the slots.
+     * @param states - the states of the slots when they were read.
+     * @return       - true iff all the slots were claimed.
+     */
+    public boolean claim(int owner, int[] slots, long[] states) {
+        for (int i = 0; i < slots.length; i++) {
+            if (!claim(owner, slots[i], states[i])) {
+                while (--i >= 0)
+                    slotStates.set(slots[i], states[i]);
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -130,7 +395,14 @@ public class Table {
      */
     public void placeToken(int player, int slot) {
         // TODO implement
-        playerTokens[slot][player] = true;
+        int index = slot * tokenWords + player / Long.SIZE;
+        long words;
+        beginUpdate();
+        do {
+            words = tokens.get(index);
+        } while (!tokens.compareAndSet(index, words, words | 1L << player));
+        endUpdate();
+        GameEvents.token(player, slot, true);
         env.ui.placeToken(player, slot);
     }
 
@@ -142,28 +414,209 @@ public class Table {
      */
     public boolean removeToken(int player, int slot) {
         // TODO implement
-        if (!playerTokens[slot][player]) return false;
-        else{
-            playerTokens[slot][player] = false;
-            env.ui.removeToken(player, slot);
-            return true;
+        int index = slot * tokenWords + player / Long.SIZE;
+        long words;
+        beginUpdate();
+        try {
+            do {
+                words = tokens.get(index);
+                if ((words & 1L << player) == 0) return false;
+            } while (!tokens.compareAndSet(index, words, words & ~(1L << player)));
+        } finally {
+            endUpdate();
         }
+        GameEvents.token(player, slot, false);
+        env.ui.removeToken(player, slot);
+        return true;
+    }
+
+    /**
+     * Starts a change of the cards or tokens that snapshots should not see half done. Changes may be nested (e.g.
+     * the dealer replaces all the cards as one change), and several threads may change the table at the same time.
+     * Every call must be followed by a call to endUpdate. Snapshots (and countCards) wait for the change to end, so
+     * the thread that makes it must not take one until then.
+     */
+    public void beginUpdate() {
+        writesStarted.incrementAndGet();
+    }
+
+    /**
+     * Ends a change started by beginUpdate.
+     */
+    public void endUpdate() {
+        writesFinished.incrementAndGet();
+    }
+
+    /**
+     * Copies the cards and tokens on the table as they were at a single point in time, without blocking the
+     * threads that change them: the copy is retried until no change overlapped it (spinning at first, then
+     * sleeping briefly, e.g. while the dealer replaces all the cards).
+     *
+     * @param snapshot - where to copy the table to (reused by the caller, so taking a snapshot does not allocate).
+     * @return         - the snapshot.
+     */
+    public Snapshot snapshot(Snapshot snapshot) {
+        snapshot.ensureCapacity(slotStates.length(), tokens.length(), tokenWords);
+        for (int attempt = 1; ; attempt++) {
+            // started is read first: if every change started by then has finished, none is in progress
+            long before = writesStarted.get();
+            if (writesFinished.get() == before) {
+                for (int slot = 0; slot < snapshot.cards.length; slot++)
+                    snapshot.cards[slot] = cardOf(slotStates.get(slot));
+                for (int word = 0; word < snapshot.tokens.length; word++)
+                    snapshot.tokens[word] = tokens.get(word);
+                if (writesStarted.get() == before) {
+                    snapshot.version = (int) before;
+                    return snapshot;
+                }
+            }
+            backOff(attempt);
+        }
+    }
+
+    /**
+     * Waits before another attempt to read the table consistently: spinning at first, then sleeping briefly.
+     */
+    private void backOff(int attempt) {
+        snapshotRetries.incrementAndGet();
+        if (attempt < SNAPSHOT_SPINS) Thread.yield();
+        else LockSupport.parkNanos(50_000);
+    }
+
+    /**
+     * Shows the cards and tokens on the table, as they are now, on a user interface that missed some of their
+     * updates (e.g. a subscriber of the event bus that fell behind).
+     *
+     * @param ui - the user interface to update.
+     */
+    public void replay(UserInterface ui) {
+        Snapshot snapshot = snapshot(new Snapshot());
+        ui.removeTokens();
+        for (int slot = 0; slot < snapshot.slots(); slot++) {
+            if (snapshot.card(slot) == EMPTY) ui.removeCard(slot);
+            else ui.placeCard(snapshot.card(slot), slot);
+            for (int player = 0; player < env.config.players; player++)
+                if (snapshot.hasToken(player, slot)) ui.placeToken(player, slot);
+        }
+    }
+
+    /**
+     * @return - the number of changes to the cards and tokens finished so far (a snapshot with the same version is
+     *           still up to date, if no change is in progress).
+     */
+    public int version() {
+        return (int) writesFinished.get();
+    }
+
+    /**
+     * @return - the number of snapshot attempts that were retried because the table changed meanwhile.
+     */
+    public long snapshotRetries() {
+        return snapshotRetries.get();
     }
 
     public boolean containPlayerToken(int player, int slot) {
-        return playerTokens[slot][player];
+        return (tokens.get(slot * tokenWords + player / Long.SIZE) & 1L << player) != 0;
+    }
+
+    /**
+     * Finds the slots with tokens of a player.
+     *
+     * @param player - the player.
+     * @param slots  - where to put the slots (only as many as fit).
+     * @return       - the number of tokens the player has on the table.
+     */
+    public int playerTokens(int player, int[] slots) {
+        int count = 0;
+        for (int slot = 0; slot < slotToCard.length; slot++)
+            if (containPlayerToken(player, slot)) {
+                if (count < slots.length) slots[count] = slot;
+                count++;
+            }
+        return count;
     }
 
-    public Integer[] getSlotToCard(){
+    public int[] getSlotToCard(){
         return slotToCard;
     }
 
-    public Integer cardAtSlot(int slot){
+    /**
+     * @param slot - the slot to look at.
+     * @return     - the card in the slot, or EMPTY if none.
+     */
+    public int cardAtSlot(int slot){
         return slotToCard[slot];
     }
 
-    public Integer slotOfCard(int card){
+    /**
+     * @param card - the card to look for.
+     * @return     - the slot the card is in, or EMPTY if it is not on the table.
+     */
+    public int slotOfCard(int card){
         return cardToSlot[card];
     }
-}
 
+    /**
+     * A consistent copy of the cards and tokens on the table (see Table.snapshot).
+     */
+    public static class Snapshot {
+
+        private int[] cards = new int[0];
+        private long[] tokens = new long[0];
+        private int tokenWords;
+        private int version;
+
+        private void ensureCapacity(int slots, int words, int tokenWords) {
+            if (cards.length != slots) cards = new int[slots];
+            if (tokens.length != words) tokens = new long[words];
+            this.tokenWords = tokenWords;
+        }
+
+        /**
+         * @return - the card in a slot, or EMPTY if none.
+         */
+        public int card(int slot) {
+            return cards[slot];
+        }
+
+        /**
+         * @return - the slot a card is in, or EMPTY if it is not on the table.
+         */
+        public int slotOf(int card) {
+            for (int slot = 0; slot < cards.length; slot++)
+                if (cards[slot] == card) return slot;
+            return EMPTY;
+        }
+
+        /**
+         * @return - true iff the player has a token on the slot.
+         */
+        public boolean hasToken(int player, int slot) {
+            return (tokens[slot * tokenWords + player / Long.SIZE] & 1L << player) != 0;
+        }
+
+        /**
+         * @return - the number of cards on the table.
+         */
+        public int countCards() {
+            int count = 0;
+            for (int card : cards)
+                if (card != EMPTY) count++;
+            return count;
+        }
+
+        /**
+         * @return - the number of slots.
+         */
+        public int slots() {
+            return cards.length;
+        }
+
+        /**
+         * @return - the table version the snapshot was taken at (see Table.version).
+         */
+        public int version() {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CardImageCacheTest {
+
+    private static Config config(int featureSize, int featureCount) {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", Integer.toString(featureSize));
+        properties.put("FeatureCount", Integer.toString(featureCount));
+        properties.put("CellWidth", "120");
+        properties.put("CellHeight", "80");
+        return new Config(Logger.getAnonymousLogger(), properties);
+    }
+
+    @Test
+    void get_EvictsLeastRecentlyUsed() {
+        int[] loads = new int[10];
+        CardImageCache cache = new CardImageCache(3, card -> {
+            loads[card]++;
+            return new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        });
+
+        Image first = cache.get(0);
+        cache.get(1);
+        cache.get(2);
+        assertSame(first, cache.get(0)); // 0 is now the most recently used
+        cache.get(3); // evicts 1
+        assertEquals(3, cache.size());
+        cache.get(0);
+        cache.get(1);
+        assertEquals(1, loads[0]);
+        assertEquals(2, loads[1]);
+        assertEquals(2, cache.hits());
+        assertEquals(5, cache.misses());
+        cache.get(2); // evicted by 1
+        assertEquals(2, loads[2]);
+    }
+
+    @Test
+    void render_EveryCardLooksDifferent() {
+        for (int[] deck : new int[][]{{3, 4}, {4, 4}, {3, 5}}) {
+            Config config = config(deck[0], deck[1]);
+            CardRenderer renderer = new CardRenderer(new UtilImpl(config), config);
+            Set<Integer> images = new HashSet<>();
+            for (int card = 0; card < config.deckSize; card++) {
+                BufferedImage image = renderer.render(card);
+                assertEquals(config.cellWidth, image.getWidth());
+                assertEquals(config.cellHeight, image.getHeight());
+                images.add(Arrays.hashCode(image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth())));
+            }
+            assertEquals(config.deckSize, images.size(), deck[0] + " values, " + deck[1] + " features");
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package bguspl.set;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the sequential and the parallel set search on large card pools, for each number of cores up to the
+ * number of available processors.
+ * Run with: mvn test-compile && java -cp target/classes:target/test-classes bguspl.set.FindSetsBenchmark
+ */
+public class FindSetsBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("available processors: " + cores);
+        for (int featureCount : new int[]{4, 5}) {
+            Properties properties = new Properties();
+            properties.put("FeatureCount", Integer.toString(featureCount));
+            properties.put("ParallelSetSearchThreshold", "0");
+            Config config = new Config(Logger.getAnonymousLogger(), properties);
+            UtilImpl util = new UtilImpl(config);
+
+            List<Integer> pool = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+            Collections.shuffle(pool, new Random(0));
+
+            double sequential = measure(() -> util.findSets(pool, Integer.MAX_VALUE).size());
+            System.out.printf("pool %4d cards: findSets %9.2f ms%n", pool.size(), sequential);
+            for (int parallelism = 1; parallelism <= cores; parallelism *= 2) {
+                ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
+                double parallel = measure(() -> util.findSetsParallel(pool, Integer.MAX_VALUE, forkJoinPool).size());
+                double first = measure(() -> util.findSetsParallel(pool, 1, forkJoinPool).size());
+                System.out.printf("pool %4d cards: findSetsParallel on %2d cores %9.2f ms (speedup %5.2fx), first set only %7.3f ms%n",
+                        pool.size(), parallelism, parallel, sequential / parallel, first);
+                forkJoinPool.shutdown();
+            }
+        }
+    }
+
+    private static double measure(java.util.function.IntSupplier search) {
+        int sink = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+            sink += search.getAsInt();
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++)
+            sink += search.getAsInt();
+        if (sink < 0) System.out.println(sink);
+        return (System.nanoTime() - start) / 1e6 / ROUNDS;
+    }
+}
@@ -0,0 +1,97 @@
+package bguspl.set;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class GameEventsTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void events_NotCreatedWithoutRecording() {
+        assumeTrue(FlightRecorder.isAvailable() && FlightRecorder.getFlightRecorder().getRecordings().isEmpty());
+        assertNull(GameEvents.beginDealerRound());
+        assertNull(GameEvents.beginFreeze(0, true));
+        assertNull(GameEvents.beginUserInterfaceDispatch("ui", "placeCard", 0));
+    }
+
+    @Test
+    void events_Recorded() throws Exception {
+        assumeTrue(FlightRecorder.isAvailable());
+        MonitorStatistics monitor = new MonitorStatistics("test");
+        monitor.exited(monitor.entered(System.nanoTime()));
+        Path file = directory.resolve("game.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("bguspl.set.Claim");
+            recording.disable("bguspl.set.CardDealt");
+            recording.start();
+            Object round = GameEvents.beginDealerRound();
+            assertNotNull(round);
+            GameEvents.claim(2, "LEGAL", 1234);
+            GameEvents.cardDealt(5, 1); // disabled
+            GameEvents.monitor(monitor);
+            GameEvents.endDealerRound(round, 1, false, 60);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().startsWith("bguspl.set."))
+                .collect(Collectors.toList());
+        assertTrue(events.stream().noneMatch(event -> event.getEventType().getName().equals("bguspl.set.CardDealt")));
+        RecordedEvent claim = find(events, "bguspl.set.Claim");
+        assertEquals(2, claim.getInt("player"));
+        assertEquals("LEGAL", claim.getString("verdict"));
+        assertEquals(1234, claim.getDuration("latency").toNanos());
+        RecordedEvent round = find(events, "bguspl.set.DealerRound");
+        assertEquals(1, round.getInt("sets"));
+        assertEquals(60, round.getInt("deckSize"));
+        RecordedEvent statistics = find(events, "bguspl.set.MonitorStatistics");
+        assertEquals("test", statistics.getString("monitor"));
+        assertEquals(1, statistics.getLong("entries"));
+    }
+
+    @Test
+    void monitorStatistics_CountsContention() throws InterruptedException {
+        MonitorStatistics statistics = new MonitorStatistics("test");
+        Object monitor = new Object();
+        Thread holder;
+        synchronized (monitor) {
+            long entered = statistics.entered(System.nanoTime());
+            holder = new Thread(() -> {
+                long requested = System.nanoTime();
+                synchronized (monitor) {
+                    statistics.exited(statistics.entered(requested));
+                }
+            });
+            holder.start();
+            while (holder.getState() != Thread.State.BLOCKED) Thread.yield();
+            Thread.sleep(5);
+            statistics.exited(entered);
+        }
+        holder.join();
+
+        assertEquals(2, statistics.entries());
+        assertTrue(statistics.contendedEntries() >= 1);
+        assertTrue(statistics.longestBlockedNanos() >= 5_000_000);
+        assertTrue(statistics.blockedNanos() >= statistics.longestBlockedNanos());
+        assertTrue(statistics.longestHoldNanos() >= 5_000_000);
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String name) {
+        return events.stream().filter(event -> event.getEventType().getName().equals(name)).findFirst()
+                .orElseThrow(() -> new AssertionError("no " + name + " event"));
+    }
+}
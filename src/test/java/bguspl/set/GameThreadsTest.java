@@ -0,0 +1,72 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GameThreadsTest {
+
+    private final GameThreads threads = new GameThreads(Logger.getAnonymousLogger());
+
+    private static void sleepUntilInterrupted() {
+        try {
+            Thread.sleep(Long.MAX_VALUE);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    @Test
+    void shutdown_WakesAndJoinsSleepingThreads() {
+        for (int i = 0; i < 8; i++)
+            threads.start(GameThreadsTest::sleepUntilInterrupted, "sleeper " + i);
+
+        assertTrue(threads.shutdown(1000));
+        assertEquals(0, threads.size());
+        assertTrue(threads.lastShutdownNanos() < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void shutdown_FromAGameThread_SkipsItself() throws InterruptedException {
+        AtomicBoolean result = new AtomicBoolean();
+        CountDownLatch started = new CountDownLatch(1);
+        Thread owner = threads.start(() -> {
+            threads.start(GameThreadsTest::sleepUntilInterrupted, "child");
+            started.countDown();
+            result.set(threads.shutdown(1000));
+        }, "owner");
+        started.await();
+        owner.join(TimeUnit.SECONDS.toMillis(5));
+
+        assertFalse(owner.isAlive());
+        assertTrue(result.get());
+        assertTrue(threads.shutdown(1000));
+        assertEquals(0, threads.size());
+    }
+
+    @Test
+    void shutdown_StubbornThread_ReturnsWithinTimeout() throws InterruptedException {
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread stubborn = threads.start(() -> {
+            while (!stop.get())
+                Thread.yield(); // ignores interrupts
+        }, "stubborn");
+
+        long start = System.nanoTime();
+        assertFalse(threads.shutdown(50));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis < 1000, "shutdown took " + elapsedMillis + "ms");
+        assertEquals(1, threads.size());
+
+        stop.set(true);
+        stubborn.join();
+        assertTrue(threads.shutdown(50));
+        assertEquals(0, threads.size());
+    }
+}
@@ -0,0 +1,53 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LeaderboardTest {
+
+    @Test
+    void top_SameAsSortingAllPlayers() {
+        Random random = new Random(0);
+        for (int players : new int[]{1, 2, 3, 7, 8, 9, 100, 257}) {
+            Leaderboard leaderboard = new Leaderboard(players);
+            int[] scores = new int[players];
+            for (int update = 0; update < 1000; update++) {
+                int player = random.nextInt(players);
+                scores[player] += random.nextInt(3); // many ties
+                leaderboard.setScore(player, scores[player]);
+
+                int k = 1 + random.nextInt(players + 1);
+                int[] top = new int[k];
+                int count = leaderboard.top(top);
+                int[] expected = IntStream.range(0, players).boxed()
+                        .sorted(Comparator.<Integer>comparingInt(p -> -scores[p]).thenComparingInt(p -> p))
+                        .mapToInt(Integer::intValue).limit(k).toArray();
+                assertEquals(expected.length, count);
+                assertArrayEquals(expected, Arrays.copyOf(top, count), players + " players, top " + k);
+            }
+            assertArrayEquals(scores, leaderboard.scores());
+        }
+    }
+
+    @Test
+    void winners_AllPlayersWithTopScore() {
+        Leaderboard leaderboard = new Leaderboard(5);
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4}, leaderboard.winners());
+
+        leaderboard.setScore(3, 2);
+        assertArrayEquals(new int[]{3}, leaderboard.winners());
+        assertEquals(2, leaderboard.topScore());
+
+        leaderboard.setScore(1, 2);
+        leaderboard.setScore(4, 1);
+        assertArrayEquals(new int[]{1, 3}, leaderboard.winners());
+        assertEquals(0, new Leaderboard(0).winners().length);
+    }
+}
@@ -0,0 +1,73 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SetTablesTest {
+
+    @TempDir
+    Path directory;
+
+    private static Config config(int featureCount) {
+        Properties properties = new Properties();
+        properties.put("FeatureCount", Integer.toString(featureCount));
+        return new Config(Logger.getAnonymousLogger(), properties);
+    }
+
+    @Test
+    void tables_SameAsTestSet() throws IOException {
+        Config config = config(4);
+        UtilImpl util = new UtilImpl(config);
+        SetTables tables = SetTables.openOrGenerate(directory.resolve("sets.tables"), config);
+
+        for (int first = 0; first < config.deckSize; first++)
+            for (int second = 0; second < config.deckSize; second++)
+                if (second != first)
+                    assertTrue(util.testSet(new int[]{first, second, tables.third(first, second)}));
+        assertEquals(0, tables.third(1, 2));
+        assertTrue(tables.residentBytes() != 0); // -1 where /proc is missing, otherwise the pages just read
+    }
+
+    @Test
+    void findSets_SameWithTables() throws IOException {
+        Config config = config(4);
+        UtilImpl plain = new UtilImpl(config);
+        UtilImpl mapped = new UtilImpl(config, SetTables.openOrGenerate(directory.resolve("sets.tables"), config));
+        List<Integer> deck = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+        Collections.shuffle(deck, new Random(0));
+
+        for (List<Integer> pool : Arrays.asList(deck.subList(0, 12), deck.subList(0, 21), deck)) {
+            List<int[]> expected = plain.findSets(pool, Integer.MAX_VALUE);
+            List<int[]> actual = mapped.findSets(pool, Integer.MAX_VALUE);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++)
+                assertArrayEquals(expected.get(i), actual.get(i));
+            assertArrayEquals(expected.get(0), mapped.findSet(pool));
+        }
+    }
+
+    @Test
+    void open_OtherFeaturesRejected() throws IOException {
+        Path path = directory.resolve("sets.tables");
+        SetTables.generate(path, 3, 4);
+
+        assertThrows(IOException.class, () -> SetTables.open(path, config(5)));
+        assertEquals(81, SetTables.open(path, config(4)).deckSize());
+    }
+}
@@ -0,0 +1,84 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Compares the scalar and the Vector API batch set validation (Util.testSets) on batches of random triples, for
+ * each number of features (decks of 81 to 2187 cards). The vector validator is measured only when the JVM runs
+ * with --add-modules jdk.incubator.vector (as the vector build profile does on JDK 17 or later).
+ * Run with: mvn test -Pbenchmark [-Dbenchmark.seconds=2]
+ */
+class SetValidationBenchmark {
+
+    private static final int TRIPLES = 1 << 16;
+    private static final int WARMUP_ROUNDS = 20;
+
+    @Test
+    void testSets_VectorVsScalar() {
+        double seconds = Double.parseDouble(System.getProperty("benchmark.seconds", "2")) / 8;
+        System.out.println("features  cards    scalar triples/s    vector triples/s (lanes)  speedup");
+        for (int featureCount = 4; featureCount <= 7; featureCount++) {
+            Properties properties = new Properties();
+            properties.put("FeatureCount", Integer.toString(featureCount));
+            Config config = new Config(Logger.getAnonymousLogger(), properties);
+
+            int[] first = new int[TRIPLES], second = new int[TRIPLES], third = new int[TRIPLES];
+            Random random = new Random(featureCount);
+            for (int i = 0; i < TRIPLES; i++) {
+                first[i] = random.nextInt(config.deckSize);
+                second[i] = random.nextInt(config.deckSize);
+                third[i] = random.nextInt(config.deckSize);
+            }
+
+            long[] scalarLegal = new long[TRIPLES / 64];
+            double scalar = measure(new ScalarSetValidator(config), first, second, third, scalarLegal, seconds);
+            SetValidator vector = UtilImpl.vectorSetValidator(config);
+            if (vector == null) {
+                System.out.printf("%8d %6d %19.0f %19s%n", featureCount, config.deckSize, scalar, "unavailable");
+                continue;
+            }
+            long[] vectorLegal = new long[TRIPLES / 64];
+            double lanes = measure(vector, first, second, third, vectorLegal, seconds);
+            assertArrayEquals(scalarLegal, vectorLegal);
+            System.out.printf("%8d %6d %19.0f %19.0f %9d %7.2fx%n", featureCount, config.deckSize, scalar, lanes,
+                    lanes(vector), lanes / scalar);
+        }
+    }
+
+    /**
+     * @return - the number of triples the vector validator checks at a time (it is compiled only on JDK 17 or later,
+     *           so it is called by reflection).
+     */
+    private static int lanes(SetValidator vector) {
+        try {
+            Method lanes = vector.getClass().getDeclaredMethod("lanes");
+            lanes.setAccessible(true);
+            return (int) lanes.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return - the triples checked per second.
+     */
+    private static double measure(SetValidator validator, int[] first, int[] second, int[] third, long[] legal, double seconds) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+            validator.testSets(first, second, third, TRIPLES, legal);
+        long rounds = 0;
+        long start = System.nanoTime();
+        long deadline = start + (long) (seconds * 1e9);
+        do {
+            validator.testSets(first, second, third, TRIPLES, legal);
+            rounds++;
+        } while (System.nanoTime() < deadline);
+        return rounds * TRIPLES / ((System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,70 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StatisticsWriterTest {
+
+    @TempDir
+    Path directory;
+
+    private static GameStatistics game(int sets) {
+        GameStatistics game = new GameStatistics(2, 1000, 0);
+        for (int i = 1; i <= sets; i++)
+            game.setFound(1000 + i * 100L);
+        game.penalty(1);
+        game.reshuffled();
+        game.finish(1000 + 60_000, 500, 3, new int[]{sets, 0});
+        return game;
+    }
+
+    @Test
+    void aggregate_AllBlocks() throws IOException {
+        Path file = directory.resolve("stats.bin");
+        try (StatisticsWriter writer = new StatisticsWriter(file, 100)) {
+            for (int i = 0; i < 250; i++)
+                writer.record(game(4));
+        }
+
+        try (StatisticsReader reader = new StatisticsReader(file)) {
+            StatisticsReader.Summary summary = reader.aggregate();
+            assertEquals(250, reader.games());
+            assertEquals(250, summary.games);
+            assertEquals(1000, summary.sets);
+            assertEquals(250, summary.penalties);
+            assertEquals(250, summary.reshuffles);
+            assertEquals(750, summary.cardsLeft);
+            assertEquals(250 * 60_000L, summary.durationMillis);
+            assertEquals(1000, summary.timeToSet[7]); // 100ms is in the 64-127ms bucket
+            assertEquals(127, summary.timeToSetPercentile(0.99));
+        }
+    }
+
+    @Test
+    void aggregate_AppendedAndUnclosed() throws IOException {
+        Path file = directory.resolve("stats.bin");
+        try (StatisticsWriter writer = new StatisticsWriter(file, 100)) {
+            writer.record(game(1));
+        }
+        // reopen for appending, and stop without writing the footer (as if the process died)
+        StatisticsWriter writer = new StatisticsWriter(file, 100);
+        for (int i = 0; i < 150; i++)
+            writer.record(game(2));
+
+        try (StatisticsReader reader = new StatisticsReader(file)) {
+            StatisticsReader.Summary summary = reader.aggregate();
+            assertEquals(101, summary.games); // the last 50 games were still buffered
+            assertEquals(201, summary.sets);
+        }
+
+        writer.close();
+        try (StatisticsReader reader = new StatisticsReader(file)) {
+            assertEquals(151, reader.aggregate().games);
+        }
+    }
+}
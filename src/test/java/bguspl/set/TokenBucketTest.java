@@ -0,0 +1,87 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    /**
+     * A clock that only moves when the test (or a sleep) moves it.
+     */
+    private static class ManualClock implements Clock {
+
+        long now;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+
+        @Override
+        public void sleep(long millis) {
+            now += millis;
+        }
+    }
+
+    @Test
+    void tryAcquire_BurstThenRate() {
+        ManualClock clock = new ManualClock();
+        TokenBucket bucket = new TokenBucket(clock, 10, 3);
+
+        for (int i = 0; i < 3; i++)
+            assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+        assertEquals(100, bucket.millisUntilAvailable());
+
+        clock.now += 250; // two and a half presses
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+        assertEquals(50, bucket.millisUntilAvailable());
+
+        clock.now += 10_000; // an idle period only saves up a burst
+        for (int i = 0; i < 3; i++)
+            assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void acquire_WaitsForTheRate() throws InterruptedException {
+        ManualClock clock = new ManualClock();
+        TokenBucket bucket = new TokenBucket(clock, 200, 1);
+
+        assertFalse(bucket.acquire());
+        for (int i = 0; i < 100; i++)
+            assertTrue(bucket.acquire());
+        assertEquals(500, clock.now);
+    }
+
+    @Test
+    void unlimited_NeverWaits() throws InterruptedException {
+        ManualClock clock = new ManualClock();
+        TokenBucket bucket = new TokenBucket(clock, 0, 1);
+
+        for (int i = 0; i < 1000; i++)
+            assertFalse(bucket.acquire());
+        assertEquals(0, clock.now);
+        assertFalse(new CpuBudget(0).charge(Long.MAX_VALUE));
+    }
+
+    @Test
+    void cpuBudget_ThrottlesOverdraw() throws InterruptedException {
+        CpuBudget budget = new CpuBudget(0.5);
+        if (!budget.limited()) return; // the JVM does not measure thread CPU time
+
+        // half a core saves up 50ms of CPU time, so using 60ms more than that waits about 120ms
+        long start = System.nanoTime();
+        assertFalse(budget.charge(10_000_000));
+        assertTrue(budget.charge(100_000_000));
+        long waited = System.nanoTime() - start;
+        assertTrue(waited >= 100_000_000, "waited " + waited + "ns");
+        assertEquals(2, budget.charges());
+        assertEquals(1, budget.throttles());
+    }
+}
@@ -0,0 +1,162 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TournamentStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private static GameStatistics game(int... scores) {
+        GameStatistics game = new GameStatistics(scores.length, 0, 0);
+        game.finish(60_000, 60_000, 0, scores);
+        return game;
+    }
+
+    @Test
+    void record_WinnersGainRating() throws IOException {
+        try (TournamentStore store = new TournamentStore(directory)) {
+            store.record(game(3, 1));
+            assertEquals(TournamentStore.INITIAL_RATING + TournamentStore.K_FACTOR / 2, store.rating(0), 1e-9);
+            assertEquals(TournamentStore.INITIAL_RATING - TournamentStore.K_FACTOR / 2, store.rating(1), 1e-9);
+
+            store.record(game(2, 2, 5));
+            assertEquals(1, store.wins(0));
+            assertEquals(1, store.wins(2));
+            assertEquals(5, store.points(0));
+            assertEquals(2, store.games(0));
+            assertEquals(1, store.games(2));
+
+            int[] top = new int[5];
+            assertEquals(3, store.top(top)); // only the players that played
+            assertArrayEquals(new int[]{2, 0, 1}, new int[]{top[0], top[1], top[2]});
+            assertEquals(2, store.games());
+            assertEquals(5, store.results());
+        }
+    }
+
+    @Test
+    void record_ConcurrentGamesThenReopen() throws Exception {
+        double[] ratings = new double[40];
+        try (TournamentStore store = new TournamentStore(directory)) {
+            List<Thread> hosts = new ArrayList<>();
+            for (int host = 0; host < 4; host++) {
+                int players = 2 + host * 12; // the index grows while the games are recorded
+                hosts.add(new Thread(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        int[] scores = new int[players];
+                        for (int player = 0; player < players; player++)
+                            scores[player] = (player * 7 + i) % 5;
+                        store.record(game(scores));
+                    }
+                }));
+            }
+            for (Thread host : hosts) host.start();
+            for (Thread host : hosts) host.join();
+            assertEquals(200, store.games());
+            assertEquals(50 * (2 + 14 + 26 + 38), store.results());
+            for (int player = 0; player < ratings.length; player++)
+                ratings[player] = store.rating(player);
+        }
+
+        try (TournamentStore store = new TournamentStore(directory)) {
+            assertEquals(200, store.games());
+            assertEquals(200, store.games(0));
+            assertEquals(50, store.games(37));
+            for (int player = 0; player < ratings.length; player++)
+                assertEquals(ratings[player], store.rating(player), 0);
+
+            AtomicLong results = new AtomicLong();
+            boolean[] seen = new boolean[200];
+            store.forEachResult((game, start, player, players, score, penalties, rating) -> {
+                results.incrementAndGet();
+                seen[(int) game] = true;
+                assertTrue(player < players);
+            });
+            assertEquals(store.results(), results.get());
+            for (boolean game : seen) assertTrue(game);
+        }
+    }
+
+    @Test
+    void open_AppliesResultsMissingFromIndex() throws IOException {
+        double rating;
+        try (TournamentStore store = new TournamentStore(directory)) {
+            store.record(game(1, 0));
+            store.record(game(1, 0));
+            rating = store.rating(0);
+        }
+        // as if the process died after appending the results of the second game, before updating the index
+        try (FileChannel index = FileChannel.open(directory.resolve("ratings.idx"), StandardOpenOption.WRITE)) {
+            index.write((ByteBuffer) ByteBuffer.allocate(16).putLong(1).putLong(2).flip(), 24);
+        }
+        try (FileChannel results = FileChannel.open(directory.resolve("results.dat"), StandardOpenOption.WRITE)) {
+            results.write(ByteBuffer.allocate(7), results.size()); // and a torn record
+        }
+
+        try (TournamentStore store = new TournamentStore(directory)) {
+            assertEquals(2, store.games());
+            assertEquals(4, store.results());
+            assertEquals(rating, store.rating(0), 0);
+            store.record(game(0, 1));
+            assertEquals(6, store.results());
+        }
+    }
+
+    @Test
+    void open_DropsPartialGame() throws IOException {
+        double rating;
+        try (TournamentStore store = new TournamentStore(directory)) {
+            store.record(game(1, 0));
+            rating = store.rating(0);
+        }
+        Files.copy(directory.resolve("ratings.idx"), directory.resolve("ratings.old"));
+        try (TournamentStore store = new TournamentStore(directory)) {
+            store.record(game(1, 0, 2));
+        }
+        // as if the process died while appending the results of the second game, before updating the index
+        Files.move(directory.resolve("ratings.old"), directory.resolve("ratings.idx"), StandardCopyOption.REPLACE_EXISTING);
+        try (FileChannel results = FileChannel.open(directory.resolve("results.dat"), StandardOpenOption.WRITE)) {
+            results.truncate(results.size() - TournamentStore.RECORD_BYTES); // the last player's result is missing
+        }
+
+        try (TournamentStore store = new TournamentStore(directory)) {
+            assertEquals(1, store.games());
+            assertEquals(2, store.results());
+            assertEquals(rating, store.rating(0), 0);
+            assertEquals(0, store.games(2));
+            store.record(game(0, 1));
+            assertEquals(4, store.results());
+        }
+        try (TournamentStore store = new TournamentStore(directory)) {
+            List<Long> games = new ArrayList<>();
+            store.forEachResult((game, start, player, players, score, penalties, after) -> games.add(game));
+            assertEquals(Arrays.asList(0L, 0L, 1L, 1L), games);
+        }
+    }
+
+    @Test
+    void open_SecondOpenFails() throws IOException {
+        try (TournamentStore ignored = new TournamentStore(directory)) {
+            assertThrows(IOException.class, () -> new TournamentStore(directory));
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserInterfaceEventBusTest {
+
+    private final UserInterfaceEventBus bus = new UserInterfaceEventBus(Logger.getAnonymousLogger(), 1000);
+
+    @AfterEach
+    void tearDown() {
+        bus.dispose();
+    }
+
+    @Test
+    void publish_DeliveredInOrder() {
+        List<Integer> cards = new ArrayList<>();
+        UserInterfaceCounting counting = new UserInterfaceCounting();
+        bus.subscribe("cards", new UserInterfaceHeadless() {
+            @Override
+            public void placeCard(int card, int slot) {
+                cards.add(card);
+            }
+        }, 16, OverflowPolicy.DROP_NEWEST);
+        bus.subscribe("counting", counting, 16, OverflowPolicy.DROP_NEWEST);
+
+        for (int card = 0; card < 10; card++)
+            bus.placeCard(card, card);
+        bus.setScore(0, 1);
+        bus.dispose(); // delivers the pending updates
+
+        assertEquals(10, cards.size());
+        for (int card = 0; card < 10; card++)
+            assertEquals(card, cards.get(card));
+        assertEquals(10, counting.cardUpdates());
+    }
+
+    @Test
+    void publish_SlowSubscriberDoesNotBlock() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        UserInterfaceEventBus.Subscription slow = bus.subscribe("slow", new UserInterfaceHeadless() {
+            @Override
+            public void setElapsed(long millies) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }, 8, OverflowPolicy.DROP_OLDEST);
+        UserInterfaceCounting counting = new UserInterfaceCounting();
+        bus.subscribe("counting", counting, 2048, OverflowPolicy.DROP_NEWEST);
+
+        bus.setElapsed(0);
+        blocked.await();
+        long start = System.nanoTime();
+        for (int i = 1; i <= 1000; i++)
+            bus.setElapsed(i);
+        long elapsed = System.nanoTime() - start;
+        release.countDown();
+        bus.dispose();
+
+        assertTrue(elapsed < 1_000_000_000L, "publishing took " + elapsed / 1e6 + " ms");
+        assertEquals(1000 - 8, slow.dropped());
+        assertEquals(1 + 8, slow.delivered());
+        assertEquals(1001, counting.timerUpdates());
+    }
+
+    @Test
+    void publish_CountdownKeepsPublishedDeadline() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        long[] countdown = new long[1];
+        bus.subscribe("slow", new UserInterfaceHeadless() {
+            @Override
+            public void setElapsed(long millies) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+
+            @Override
+            public void startCountdown(long millies, long warnMillis) {
+                countdown[0] = millies;
+            }
+        }, 8, OverflowPolicy.DROP_NEWEST);
+
+        bus.setElapsed(0);
+        blocked.await();
+        bus.startCountdown(60_000, 5_000);
+        Thread.sleep(200); // the countdown waits in the queue
+        release.countDown();
+        bus.dispose();
+
+        assertTrue(countdown[0] <= 60_000 - 200, "countdown delivered as " + countdown[0] + " ms");
+    }
+
+    @Test
+    void publish_CoalescesPendingDuplicates() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        UserInterfaceEventBus.Subscription subscription = bus.subscribe("slow", new UserInterfaceHeadless() {
+            @Override
+            public void removeCard(int slot) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }, 8, OverflowPolicy.COALESCE);
+
+        bus.removeCard(0);
+        blocked.await();
+        for (int i = 0; i < 5; i++)
+            bus.setCountdown(1000, false);
+        bus.setCountdown(999, false);
+        release.countDown();
+        bus.dispose();
+
+        assertEquals(4, subscription.coalesced());
+        assertEquals(3, subscription.delivered());
+    }
+
+    @Test
+    void publish_CoalescesOnlyAgainstNewestUpdate() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> updates = new ArrayList<>();
+        UserInterfaceEventBus.Subscription subscription = bus.subscribe("slow", new UserInterfaceHeadless() {
+            @Override
+            public void setScore(int player, int score) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+
+            @Override
+            public void placeCard(int card, int slot) {
+                updates.add("place " + card);
+            }
+
+            @Override
+            public void removeCard(int slot) {
+                updates.add("remove");
+            }
+
+            @Override
+            public void setCountdown(long millies, boolean warn) {
+                updates.add("countdown " + millies);
+            }
+        }, 16, OverflowPolicy.COALESCE);
+
+        bus.setScore(0, 0);
+        blocked.await();
+        bus.placeCard(1, 0);
+        bus.removeCard(0);
+        bus.placeCard(1, 0);
+        bus.setCountdown(1000, false);
+        bus.setCountdown(999, false);
+        bus.setCountdown(1000, false);
+        bus.setCountdown(1000, false);
+        release.countDown();
+        bus.dispose();
+
+        assertEquals(1, subscription.coalesced());
+        assertEquals(Arrays.asList("place 1", "remove", "place 1", "countdown 1000", "countdown 999", "countdown 1000"),
+                updates);
+    }
+
+    @Test
+    void publish_FullRingKeepsCardsAndResyncs() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        int[] shown = new int[20];
+        Arrays.fill(shown, -1);
+        UserInterfaceEventBus.Subscription subscription = bus.subscribe("slow", new UserInterfaceHeadless() {
+            @Override
+            public void setScore(int player, int score) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+
+            @Override
+            public void placeCard(int card, int slot) {
+                shown[slot] = card;
+            }
+        }, 8, OverflowPolicy.DROP_OLDEST);
+        bus.setStateSource(ui -> {
+            for (int slot = 0; slot < shown.length; slot++)
+                ui.placeCard(slot + 100, slot);
+        });
+
+        bus.setScore(0, 0);
+        blocked.await();
+        for (int slot = 0; slot < 8; slot++)
+            bus.placeCard(slot + 100, slot);
+        bus.setElapsed(0); // the ring is full of card updates, so the timer update is the one dropped
+        assertEquals(1, subscription.dropped());
+        for (int slot = 8; slot < shown.length; slot++)
+            bus.placeCard(slot + 100, slot);
+        release.countDown();
+        bus.dispose();
+
+        assertEquals(1, subscription.resyncs());
+        for (int slot = 0; slot < shown.length; slot++)
+            assertEquals(slot + 100, shown[slot]);
+    }
+}
@@ -0,0 +1,149 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UtilImplTest {
+
+    private UtilImpl util;
+    private List<Integer> deck;
+
+    @BeforeEach
+    void setUp() {
+        Properties properties = new Properties();
+        properties.put("ParallelSetSearchThreshold", "20");
+        properties.put("SetCacheSize", "2");
+        Logger logger = Logger.getAnonymousLogger();
+        Config config = new Config(logger, properties);
+        util = new UtilImpl(config);
+        deck = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+    }
+
+    @Test
+    void findSetsParallel_SameAsFindSets() {
+        List<int[]> expected = util.findSets(deck, Integer.MAX_VALUE);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            CardSets actual = util.findSetsParallel(deck, Integer.MAX_VALUE, pool);
+
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++)
+                assertArrayEquals(expected.get(i), actual.get(i));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void findSetsParallel_StopsAtCount() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            CardSets sets = util.findSetsParallel(deck, 5, pool);
+
+            assertEquals(5, sets.size());
+            for (int i = 0; i < sets.size(); i++)
+                assertEquals(true, util.testSet(sets.get(i)));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void findSetsParallel_BelowThreshold() {
+        List<Integer> small = deck.subList(0, 12);
+        List<int[]> expected = util.findSets(small, Integer.MAX_VALUE);
+        CardSets actual = util.findSetsParallel(small, Integer.MAX_VALUE);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+            assertArrayEquals(expected.get(i), actual.get(i));
+    }
+
+    @Test
+    void findSet_CachedRegardlessOfOrder() {
+        List<Integer> pool = deck.subList(0, 12);
+        int[] first = util.findSet(pool);
+        List<Integer> reversed = new ArrayList<>(pool);
+        Collections.reverse(reversed);
+
+        assertArrayEquals(util.findSets(pool, 1).get(0), first);
+        assertArrayEquals(first, util.findSet(reversed));
+        assertEquals(1, util.setCache().misses());
+        assertEquals(1, util.setCache().hits());
+    }
+
+    @Test
+    void findSet_NoSet() {
+        // cards 0 and 1 only differ in the last feature, and 0 and 3 in the one before
+        List<Integer> pool = Arrays.asList(0, 1, 3, 4);
+
+        assertNull(util.findSet(pool));
+        assertNull(util.findSet(pool));
+        assertEquals(1, util.setCache().hits());
+    }
+
+    @Test
+    void findSet_EvictsLeastRecentlyUsed() {
+        util.findSet(deck.subList(0, 10));
+        util.findSet(deck.subList(0, 11));
+        util.findSet(deck.subList(0, 10));
+        util.findSet(deck.subList(0, 12));
+        util.findSet(deck.subList(0, 10));
+
+        assertEquals(1, util.setCache().evictions());
+        assertEquals(2, util.setCache().hits());
+    }
+
+    @Test
+    void testSets_SameAsTestSet() {
+        for (String featureSize : new String[]{"3", "4"}) {
+            Properties properties = new Properties();
+            properties.put("FeatureSize", featureSize);
+            Config config = new Config(Logger.getAnonymousLogger(), properties);
+            assertTestSets(new UtilImpl(config), config, new ScalarSetValidator(config));
+            SetValidator vector = UtilImpl.vectorSetValidator(config);
+            if (vector != null) assertTestSets(new UtilImpl(config), config, vector);
+        }
+    }
+
+    private static void assertTestSets(Util util, Config config, SetValidator validator) {
+        // a count that is not a multiple of the vector lanes, and legal sets well above chance
+        int count = 1000 + 7;
+        int[] first = new int[count], second = new int[count], third = new int[count];
+        Random random = new Random(0);
+        for (int i = 0; i < count; i++) {
+            first[i] = random.nextInt(config.deckSize);
+            second[i] = random.nextInt(config.deckSize);
+            third[i] = random.nextInt(config.deckSize);
+            if (i % 3 == 0) third[i] = first[i]; // two equal cards are a set only if all three are equal
+            if (i % 5 == 0) second[i] = third[i] = first[i];
+        }
+        long[] legal = new long[(count + 63) / 64];
+        Arrays.fill(legal, -1L); // must be cleared
+        validator.testSets(first, second, third, count, legal);
+
+        int legalSets = 0;
+        for (int i = 0; i < count; i++) {
+            boolean expected = util.testSet(new int[]{first[i], second[i], third[i]});
+            assertEquals(expected, (legal[i >>> 6] >>> i & 1) != 0, validator.getClass().getSimpleName() + " triple " + i);
+            if (expected) legalSets++;
+        }
+        assertTrue(legalSets > count / 5);
+    }
+}
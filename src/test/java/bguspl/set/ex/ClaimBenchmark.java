@@ -0,0 +1,103 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UserInterfaceHeadless;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures how many set claims per second threads can make when they all claim overlapping legal sets on the same
+ * table, with the lock-free claim (Dealer.claimSet) and with the same claim under a global table lock.
+ * A player marks a set with its tokens before claiming it (as a player thread does), and a player that collects a
+ * set puts its cards back, so the same overlapping sets are claimed over and over.
+ * Run with: mvn test -Pbenchmark [-Dbenchmark.seconds=2]
+ */
+class ClaimBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32};
+
+    @Test
+    void claims_UnderContention() throws InterruptedException {
+        double seconds = Double.parseDouble(System.getProperty("benchmark.seconds", "2")) / 2;
+        System.out.println("threads    lock-free claims/s (legal/lost)     global lock claims/s (legal/lost)");
+        for (int threads : THREADS) {
+            long[] lockFree = run(threads, seconds, false);
+            long[] locked = run(threads, seconds, true);
+            System.out.printf("%7d %13.0f (%6.1f%% / %5.1f%%) %20.0f (%6.1f%% / %5.1f%%)%n", threads,
+                    lockFree[0] / seconds, 100.0 * lockFree[1] / lockFree[0], 100.0 * lockFree[2] / lockFree[0],
+                    locked[0] / seconds, 100.0 * locked[1] / locked[0], 100.0 * locked[2] / locked[0]);
+            assertTrue(lockFree[1] > 0 && locked[1] > 0);
+        }
+    }
+
+    /**
+     * @return - the number of claims, legal claims and lost claims.
+     */
+    private static long[] run(int threads, double seconds, boolean globalLock) throws InterruptedException {
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", Integer.toString(threads));
+        properties.put("TableDelaySeconds", "0");
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+        Env env = new Env(logger, config, new UserInterfaceHeadless(), new UtilImpl(config));
+        Table table = new Table(env);
+        Dealer dealer = new Dealer(env, table, new Player[threads]);
+
+        // cards 0..11 of the standard deck, with the legal sets among them (most of which overlap)
+        for (int slot = 0; slot < config.tableSize; slot++)
+            table.placeCard(slot, slot);
+        List<int[]> sets = new ArrayList<>();
+        for (int a = 0; a < config.tableSize; a++)
+            for (int b = a + 1; b < config.tableSize; b++)
+                for (int c = b + 1; c < config.tableSize; c++)
+                    if (env.util.testSet(new int[]{a, b, c})) sets.add(new int[]{a, b, c});
+
+        LongAdder claims = new LongAdder(), legal = new LongAdder(), lost = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long deadline = System.nanoTime() + (long) (seconds * 1e9);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int player = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                int[] slots = new int[3];
+                while (System.nanoTime() < deadline) {
+                    int[] set = sets.get(ThreadLocalRandom.current().nextInt(sets.size()));
+                    System.arraycopy(set, 0, slots, 0, 3);
+                    for (int slot : slots)
+                        table.placeToken(player, slot);
+                    Dealer.Verdict verdict;
+                    if (globalLock) synchronized (table) {
+                        verdict = dealer.claimSet(player, slots);
+                    } else verdict = dealer.claimSet(player, slots);
+                    claims.increment();
+                    if (verdict == Dealer.Verdict.LEGAL) {
+                        legal.increment();
+                        for (int slot : set)
+                            table.placeCard(slot, slot); // card i is always in slot i
+                    } else if (verdict == Dealer.Verdict.LOST) lost.increment();
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers)
+            worker.join();
+        return new long[]{claims.sum(), legal.sum(), lost.sum()};
+    }
+}
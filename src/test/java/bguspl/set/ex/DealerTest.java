@@ -0,0 +1,257 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.StatisticsReader;
+import bguspl.set.StatisticsWriter;
+import bguspl.set.TournamentStore;
+import bguspl.set.UserInterfaceCounting;
+import bguspl.set.UtilImpl;
+import bguspl.set.VirtualClock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DealerTest {
+
+    private VirtualClock clock;
+    private Env env;
+    private UserInterfaceCounting ui;
+
+    @BeforeEach
+    void setUp() {
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "4");
+        properties.put("TurnTimeoutSeconds", "60");
+        properties.put("TurnTimeoutWarningSeconds", "5");
+        properties.put("PointFreezeSeconds", "1");
+        properties.put("PenaltyFreezeSeconds", "3");
+        properties.put("TableDelaySeconds", "0.1");
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+        clock = new VirtualClock();
+        ui = new UserInterfaceCounting();
+        env = new Env(logger, config, ui, new UtilImpl(config), clock);
+    }
+
+    @AfterEach
+    void tearDown() {
+        clock.shutdown();
+    }
+
+    @Test
+    void run_OnVirtualTime_PlaysSeveralTurnsQuickly() throws InterruptedException {
+        Table table = new Table(env);
+        Player[] players = new Player[env.config.players];
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, false);
+
+        long start = System.nanoTime();
+        Thread dealerThread = env.threads.start(dealer, "dealer");
+
+        // three full turn timeouts with reshuffles, freezes and table delays
+        long end = 3 * env.config.turnTimeoutMillis + env.config.turnTimeoutWarningMillis;
+        while (clock.currentTimeMillis() < end)
+            Thread.sleep(1);
+        dealer.terminate();
+        dealerThread.join(TimeUnit.SECONDS.toMillis(10));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertFalse(dealerThread.isAlive());
+        assertTrue(env.threads.shutdown(1000));
+        assertEquals(0, env.threads.size(), "threads left after the game");
+        assertTrue(ui.cardUpdates() >= 2L * env.config.tableSize, ui.toString());
+        assertTrue(ui.timerUpdates() > 0, ui.toString());
+        // the countdown is started when the reshuffle time changes, not refreshed by the dealer in the warning window
+        long rounds = dealer.statistics().reshuffles() + 1;
+        assertTrue(ui.timerUpdates() <= 2 * rounds + dealer.statistics().sets(), ui + ", " + rounds + " rounds");
+        assertTrue(elapsedMillis < end / 10, "simulating " + end + "ms took " + elapsedMillis + "ms");
+        env.logger.info("simulated " + end + "ms of game time in " + elapsedMillis + "ms");
+    }
+
+    @Test
+    void run_NoSetOnTable_AddsColumns() throws InterruptedException {
+        // 9 cards of 2 features on a single row of 2 slots: there is never a set among 2 cards, and always one
+        // among 5 cards, so the dealer adds 1 to 3 columns instead of waiting for the reshuffle
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "0");
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "2");
+        properties.put("Rows", "1");
+        properties.put("Columns", "2");
+        properties.put("MaxColumns", "9");
+        properties.put("TurnTimeoutSeconds", "1000");
+        properties.put("TableDelaySeconds", "0");
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+        Env env = new Env(logger, config, ui, new UtilImpl(config), clock);
+        Table table = new Table(env);
+        Dealer dealer = new Dealer(env, table, new Player[0]);
+
+        Thread dealerThread = env.threads.start(dealer, "dealer");
+        while (clock.currentTimeMillis() < 10_000) // the dealer has dealt and sleeps until the reshuffle
+            Thread.sleep(1);
+
+        int slots = table.activeSlots();
+        assertTrue(slots >= 3 && slots <= 5, slots + " slots");
+        assertEquals(slots, table.countCards());
+        List<Integer> cards = new ArrayList<>();
+        for (int slot = 0; slot < slots; slot++)
+            cards.add(table.cardAtSlot(slot));
+        assertTrue(env.util.findSet(cards) != null, cards.toString());
+        cards.remove(slots - 1); // the last column was added because there was no set without it
+        assertTrue(env.util.findSet(cards) == null, cards.toString());
+
+        dealer.terminate();
+        dealerThread.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(dealerThread.isAlive());
+    }
+
+    @Test
+    void announceWinners_DealerInterrupted_RecordsGame(@TempDir Path directory) throws Exception {
+        Table table = new Table(env);
+        Player[] players = new Player[2];
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, true);
+        Thread[] dealerThread = new Thread[1];
+        dealer.addRecorder(game -> dealerThread[0].interrupt()); // a set collected as the game ends
+        try (TournamentStore store = new TournamentStore(directory)) {
+            dealer.addRecorder(store);
+
+            dealerThread[0] = env.threads.start(dealer, "dealer");
+            dealer.terminate();
+            dealerThread[0].join(TimeUnit.SECONDS.toMillis(10));
+
+            assertFalse(dealerThread[0].isAlive());
+            assertEquals(1, store.games());
+            store.record(dealer.statistics()); // the store is still open
+            assertEquals(2, store.games());
+        }
+    }
+
+    @Test
+    void announceWinners_DealerInterrupted_FlushesStatistics(@TempDir Path directory) throws Exception {
+        Table table = new Table(env);
+        Player[] players = new Player[2];
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, true);
+        Thread[] dealerThread = new Thread[1];
+        dealer.addRecorder(game -> dealerThread[0].interrupt()); // a set collected as the game ends
+        Path file = directory.resolve("stats.bin");
+        try (StatisticsWriter writer = new StatisticsWriter(file, 1)) { // every game is a block
+            dealer.addRecorder(writer);
+
+            dealerThread[0] = env.threads.start(dealer, "dealer");
+            dealer.terminate();
+            dealerThread[0].join(TimeUnit.SECONDS.toMillis(10));
+
+            assertFalse(dealerThread[0].isAlive());
+            writer.record(dealer.statistics()); // the file is still open
+        }
+        try (StatisticsReader reader = new StatisticsReader(file)) { // with its footer
+            assertEquals(2, reader.games());
+        }
+    }
+
+    @Test
+    void claimSet_CardReplacedAfterMarking_IsLostNotIllegal() {
+        Table table = new Table(env);
+        Dealer dealer = new Dealer(env, table, new Player[1]);
+        int[] set = {0, 1, 2};
+        assertTrue(env.util.testSet(set));
+        for (int slot = 0; slot < 3; slot++) {
+            table.placeCard(set[slot], slot);
+            table.placeToken(0, slot);
+        }
+
+        // another player collects the card in slot 2 and the dealer deals a card that makes the three illegal
+        table.removeCard(2);
+        table.placeCard(4, 2);
+        assertFalse(env.util.testSet(new int[]{0, 1, 4}));
+
+        assertEquals(Dealer.Verdict.LOST, dealer.claimSet(0, new int[]{0, 1, 2}));
+        assertEquals(0, dealer.statistics().penalties(0));
+    }
+
+    @Test
+    void claimSet_ConcurrentClaims_EachCardCollectedOnce() throws InterruptedException {
+        int claimers = 8;
+        List<int[]> triples = new ArrayList<>();
+        for (int a = 0; a < env.config.tableSize; a++)
+            for (int b = a + 1; b < env.config.tableSize; b++)
+                for (int c = b + 1; c < env.config.tableSize; c++)
+                    triples.add(new int[]{a, b, c});
+
+        for (int round = 0; round < 200; round++) {
+            Table table = new Table(env);
+            Dealer dealer = new Dealer(env, table, new Player[claimers]);
+            int[] layout = new int[env.config.tableSize];
+            Random random = new Random(round);
+            for (int slot = 0; slot < layout.length; slot++) {
+                layout[slot] = slot * 6 + random.nextInt(6); // distinct cards
+                table.placeCard(layout[slot], slot);
+            }
+
+            List<int[]> collected = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] threads = new Thread[claimers];
+            for (int t = 0; t < claimers; t++) {
+                int player = t;
+                List<int[]> order = new ArrayList<>(triples);
+                Collections.shuffle(order, new Random(round * claimers + t));
+                threads[t] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int[] slots : order) {
+                        for (int slot : slots)
+                            table.placeToken(player, slot);
+                        if (dealer.claimSet(player, slots.clone()) == Dealer.Verdict.LEGAL) collected.add(slots);
+                        for (int slot : slots)
+                            table.removeToken(player, slot);
+                    }
+                });
+                threads[t].start();
+            }
+            start.countDown();
+            for (Thread thread : threads)
+                thread.join();
+
+            boolean[] taken = new boolean[layout.length];
+            for (int[] slots : collected) {
+                int[] cards = {layout[slots[0]], layout[slots[1]], layout[slots[2]]};
+                assertTrue(env.util.testSet(cards), "collected an illegal set " + Arrays.toString(cards));
+                for (int slot : slots) {
+                    assertFalse(taken[slot], "card " + layout[slot] + " collected twice");
+                    taken[slot] = true;
+                }
+            }
+            assertEquals(layout.length - 3 * collected.size(), table.countCards());
+            assertEquals(collected.size(), dealer.statistics().sets());
+            for (int slot = 0; slot < layout.length; slot++)
+                assertEquals(taken[slot] ? Table.EMPTY : layout[slot], Table.cardOf(table.slotState(slot)));
+        }
+    }
+}
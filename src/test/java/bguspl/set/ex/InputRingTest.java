@@ -0,0 +1,88 @@
+package bguspl.set.ex;
+
+import bguspl.set.OverflowPolicy;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InputRingTest {
+
+    private static void fill(InputRing ring, int... slots) {
+        for (int slot : slots)
+            ring.offer(slot);
+    }
+
+    @Test
+    void offer_KeepsOrder() {
+        InputRing ring = new InputRing(3, OverflowPolicy.DROP_NEWEST);
+        fill(ring, 4, 7, 1);
+
+        assertEquals(4, ring.poll());
+        assertEquals(7, ring.poll());
+        assertEquals(1, ring.poll());
+        assertEquals(InputRing.EMPTY, ring.poll());
+    }
+
+    @Test
+    void offer_WhenFull_DropsNewest() {
+        InputRing ring = new InputRing(3, OverflowPolicy.DROP_NEWEST);
+        fill(ring, 0, 1, 2);
+
+        assertFalse(ring.offer(3));
+        assertEquals(1, ring.droppedPresses());
+        assertEquals(0, ring.poll());
+    }
+
+    @Test
+    void offer_WhenFull_DropsOldest() {
+        InputRing ring = new InputRing(3, OverflowPolicy.DROP_OLDEST);
+        fill(ring, 0, 1, 2);
+
+        assertTrue(ring.offer(3));
+        assertEquals(1, ring.droppedPresses());
+        assertEquals(1, ring.poll());
+        assertEquals(2, ring.poll());
+        assertEquals(3, ring.poll());
+    }
+
+    @Test
+    void offer_PendingSlot_Coalesces() {
+        InputRing ring = new InputRing(3, OverflowPolicy.COALESCE);
+        fill(ring, 5, 5, 6);
+
+        assertEquals(2, ring.size());
+        assertEquals(1, ring.coalescedPresses());
+        assertEquals(0, ring.droppedPresses());
+    }
+
+    @Test
+    void take_ReleasedByClose() throws InterruptedException {
+        InputRing ring = new InputRing(3, OverflowPolicy.DROP_NEWEST);
+        int[] taken = {0};
+        Thread consumer = new Thread(() -> taken[0] = ring.take());
+        consumer.start();
+
+        ring.close();
+        consumer.join(1000);
+
+        assertFalse(consumer.isAlive());
+        assertEquals(InputRing.EMPTY, taken[0]);
+        assertFalse(ring.offer(1));
+    }
+
+    @Test
+    void take_WokenByOffer() throws InterruptedException {
+        InputRing ring = new InputRing(3, OverflowPolicy.DROP_NEWEST);
+        int[] taken = {InputRing.EMPTY};
+        Thread consumer = new Thread(() -> taken[0] = ring.take());
+        consumer.start();
+
+        ring.offer(9);
+        consumer.join(1000);
+
+        assertFalse(consumer.isAlive());
+        assertEquals(9, taken[0]);
+    }
+}
@@ -2,19 +2,31 @@ package bguspl.set.ex;
 
 import bguspl.set.Config;
 import bguspl.set.Env;
+import bguspl.set.Leaderboard;
 import bguspl.set.UserInterface;
+import bguspl.set.UserInterfaceHeadless;
 import bguspl.set.Util;
+import bguspl.set.UtilImpl;
+import bguspl.set.VirtualClock;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -33,6 +45,7 @@ class PlayerTest {
     private Dealer dealer;
     @Mock
     private Logger logger;
+    private VirtualClock clock;
 
     void assertInvariants() {
         assertTrue(player.id >= 0);
@@ -42,13 +55,16 @@ class PlayerTest {
     @BeforeEach
     void setUp() {
         // purposely do not find the configuration files (use defaults here).
-        Env env = new Env(logger, new Config(logger, (String) null), ui, util);
+        // run on simulated time so the freeze does not slow the test down
+        clock = new VirtualClock();
+        Env env = new Env(logger, new Config(logger, (String) null), ui, util, clock);
         player = new Player(env, dealer, table, 0, false);
         assertInvariants();
     }
 
     @AfterEach
     void tearDown() {
+        clock.shutdown();
         assertInvariants();
     }
 
@@ -57,6 +73,8 @@ class PlayerTest {
 
         // force table.countCards to return 3
         when(table.countCards()).thenReturn(3); // this part is just for demonstration
+        Leaderboard leaderboard = new Leaderboard(1);
+        when(dealer.leaderboard()).thenReturn(leaderboard);
 
         // calculate the expected score for later
         int expectedScore = player.score() + 1;
@@ -69,5 +87,91 @@ class PlayerTest {
 
         // check that ui.setScore was called with the player's id and the correct score
         verify(ui).setScore(eq(player.id), eq(expectedScore));
+
+        // check that the player's rank was updated
+        assertEquals(expectedScore, leaderboard.score(player.id));
+    }
+
+    @Test
+    @Timeout(120)
+    void run_SteadyStateClaimsDoNotAllocate() throws InterruptedException {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "1");
+        properties.put("ComputerPlayers", "0");
+        properties.put("PointFreezeSeconds", "0");
+        properties.put("PenaltyFreezeSeconds", "0");
+        properties.put("TableDelaySeconds", "0");
+        TableTest.MockLogger mockLogger = new TableTest.MockLogger();
+        Config config = new Config(mockLogger, properties);
+        Env env = new Env(mockLogger, config, new UserInterfaceHeadless(), new UtilImpl(config));
+        Table table = new Table(env);
+        Player[] players = new Player[1];
+        Dealer dealer = new Dealer(env, table, players);
+        Player human = players[0] = new Player(env, dealer, table, 0, true);
+
+        // slots 0-2 hold cards that are not a set, and slots 3-5 hold a set
+        int[] notSet = {3, 4, 9}, set = {0, 1, 2};
+        assertFalse(env.util.testSet(notSet));
+        assertTrue(env.util.testSet(set));
+        for (int i = 0; i < 3; i++) {
+            table.placeCard(notSet[i], i);
+            table.placeCard(set[i], 3 + i);
+        }
+        Thread thread = new Thread(human, "player 1");
+        thread.start();
+
+        // warm up until the JIT compiled the loop, then measure: a press, token toggle, claim and verdict each.
+        // A game has at most deckSize / 3 sets, which the statistics hold without growing, so the legal claims
+        // stay below that (20 while warming up, and 4 while measuring)
+        int[] claims = {0};
+        Runnable illegal = () -> {
+            for (int slot = 0; slot < 3; slot++)
+                human.keyPressed(slot);
+            awaitClaim(thread, dealer, ++claims[0]);
+            for (int slot = 0; slot < 3; slot++)
+                human.keyPressed(slot); // removes the tokens
+            awaitTrue(() -> !table.containPlayerToken(0, 0) && !table.containPlayerToken(0, 1) && !table.containPlayerToken(0, 2)
+                    && thread.getState() == Thread.State.WAITING);
+        };
+        Runnable legal = () -> {
+            for (int slot = 3; slot < 6; slot++)
+                human.keyPressed(slot);
+            awaitClaim(thread, dealer, ++claims[0]);
+            for (int i = 0; i < 3; i++)
+                table.placeCard(set[i], 3 + i); // the dealer's part
+        };
+        for (int round = 0; round < 20000; round++)
+            (round % 1000 == 0 ? legal : illegal).run();
+
+        long before = allocations.getThreadAllocatedBytes(thread.getId());
+        for (int round = 0; round < 2000; round++)
+            (round % 500 == 0 ? legal : illegal).run();
+        long allocated = allocations.getThreadAllocatedBytes(thread.getId()) - before;
+
+        human.terminate();
+        thread.join();
+        assertEquals(24, human.score());
+        assertEquals(0, allocated, "the player thread allocated " + allocated + " bytes in 12000 presses");
+    }
+
+    /**
+     * Waits until the player thread got the verdict of a claim and waits for the next key press (the presses made
+     * before it clears its queue after the verdict would be lost).
+     */
+    private static void awaitClaim(Thread thread, Dealer dealer, int claims) {
+        awaitTrue(() -> dealer.statistics().claims() == claims && thread.getState() == Thread.State.WAITING);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) fail("the player thread did not get there in 10 seconds");
+            Thread.yield();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,140 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UserInterfaceHeadless;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures one writer (placing and removing tokens, and replacing cards) against many readers that copy the whole
+ * table: with seqlock snapshots (Table.snapshot), and with readers and the writer synchronized on the table.
+ * Reports the snapshots per second and the mean and maximal time of a write. Each snapshot is also checked for
+ * consistency: the writer keeps exactly one token per card, so a torn copy shows a different number of tokens.
+ * Run with: mvn test -Pbenchmark [-Dbenchmark.seconds=2]
+ */
+class SnapshotBenchmark {
+
+    private static final int[] READERS = {0, 1, 2, 4, 8, 16};
+
+    @Test
+    void snapshots_OneWriterManyReaders() throws InterruptedException {
+        double seconds = Double.parseDouble(System.getProperty("benchmark.seconds", "2")) / 4;
+        System.out.println("readers   seqlock snapshots/s  write mean   max      locked copies/s  write mean   max");
+        for (int readers : READERS) {
+            long[] seqlock = run(readers, seconds, false);
+            long[] locked = run(readers, seconds, true);
+            System.out.printf("%7d %21.0f %8.0fns %6.0fus %18.0f %8.0fns %6.0fus%n", readers,
+                    seqlock[0] / seconds, (double) seqlock[2] / seqlock[1], seqlock[3] / 1e3,
+                    locked[0] / seconds, (double) locked[2] / locked[1], locked[3] / 1e3);
+            assertEquals(0, seqlock[4], "torn snapshots");
+            assertTrue(readers == 0 || seqlock[0] > 0);
+        }
+    }
+
+    /**
+     * @return - the number of copies, writes, total write nanoseconds, maximal write nanoseconds and torn copies.
+     */
+    private static long[] run(int readers, double seconds, boolean lock) throws InterruptedException {
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "4");
+        properties.put("TableDelaySeconds", "0");
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+        Env env = new Env(logger, config, new UserInterfaceHeadless(), new UtilImpl(config));
+        Table table = new Table(env);
+        for (int slot = 0; slot < config.tableSize; slot++) {
+            table.placeCard(slot, slot);
+            table.placeToken(slot % config.players, slot);
+        }
+
+        LongAdder copies = new LongAdder(), torn = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long deadline = System.nanoTime() + (long) (seconds * 1e9);
+        Thread[] threads = new Thread[readers];
+        for (int r = 0; r < readers; r++) {
+            threads[r] = new Thread(() -> {
+                Table.Snapshot snapshot = new Table.Snapshot();
+                int[] cards = new int[config.tableSize];
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (System.nanoTime() < deadline) {
+                    int tokens = 0, cardCount = 0;
+                    if (lock) synchronized (table) {
+                        for (int slot = 0; slot < config.tableSize; slot++) {
+                            cards[slot] = table.cardAtSlot(slot);
+                            for (int player = 0; player < config.players; player++)
+                                if (table.containPlayerToken(player, slot)) tokens++;
+                        }
+                    } else {
+                        table.snapshot(snapshot);
+                        for (int slot = 0; slot < config.tableSize; slot++) {
+                            cards[slot] = snapshot.card(slot);
+                            for (int player = 0; player < config.players; player++)
+                                if (snapshot.hasToken(player, slot)) tokens++;
+                        }
+                    }
+                    for (int card : cards)
+                        if (card != Table.EMPTY) cardCount++;
+                    if (tokens != cardCount) torn.increment();
+                    copies.increment();
+                }
+            });
+            threads[r].start();
+        }
+
+        start.countDown();
+        long writes = 0, total = 0, max = 0;
+        int nextCard = config.tableSize;
+        for (int step = 0; System.nanoTime() < deadline; step++) {
+            int slot = step % config.tableSize;
+            int player = step % config.players;
+            long begin = System.nanoTime();
+            if (lock) synchronized (table) {
+                nextCard = write(table, config, slot, player, step, nextCard);
+            } else {
+                table.beginUpdate();
+                nextCard = write(table, config, slot, player, step, nextCard);
+                table.endUpdate();
+            }
+            long time = System.nanoTime() - begin;
+            writes++;
+            total += time;
+            max = Math.max(max, time);
+            if (readers > 0 && step % 64 == 0) Thread.yield(); // let the readers run on a single core too
+        }
+        for (Thread thread : threads)
+            thread.join();
+        return new long[]{copies.sum(), writes, total, max, torn.sum()};
+    }
+
+    /**
+     * Moves the token of a slot to another player, or replaces the card of the slot (with its token), keeping one
+     * token per card.
+     */
+    private static int write(Table table, Config config, int slot, int player, int step, int nextCard) {
+        int owner = -1;
+        for (int p = 0; p < config.players && owner < 0; p++)
+            if (table.containPlayerToken(p, slot)) owner = p;
+        if (step % 16 == 0) {
+            table.removeCard(slot);
+            table.placeCard(nextCard, slot);
+            table.placeToken(player, slot);
+            return (nextCard + 1) % config.deckSize < config.tableSize ? config.tableSize : (nextCard + 1) % config.deckSize;
+        }
+        table.removeToken(owner, slot);
+        table.placeToken((owner + 1) % config.players, slot);
+        return nextCard;
+    }
+}
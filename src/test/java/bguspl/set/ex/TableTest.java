@@ -1,23 +1,30 @@
 package bguspl.set.ex;
 
+import bguspl.set.CardSets;
 import bguspl.set.Config;
 import bguspl.set.Env;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.GraphLayout;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class TableTest {
 
     Table table;
-    private Integer[] slotToCard;
-    private Integer[] cardToSlot;
+    private int[] slotToCard;
+    private int[] cardToSlot;
 
     @BeforeEach
     void setUp() {
@@ -32,8 +39,10 @@ class TableTest {
         properties.put("PlayerKeys2", "85,73,79,80");
         MockLogger logger = new MockLogger();
         Config config = new Config(logger, properties);
-        slotToCard = new Integer[config.tableSize];
-        cardToSlot = new Integer[config.deckSize];
+        slotToCard = new int[config.tableSize];
+        cardToSlot = new int[config.deckSize];
+        Arrays.fill(slotToCard, Table.EMPTY);
+        Arrays.fill(cardToSlot, Table.EMPTY);
 
         Env env = new Env(logger, config, new MockUserInterface(), new MockUtil());
         table = new Table(env, slotToCard, cardToSlot);
@@ -58,8 +67,8 @@ class TableTest {
     private void placeSomeCardsAndAssert() throws InterruptedException {
         table.placeCard(8, 2);
 
-        assertEquals(8, (int) slotToCard[2]);
-        assertEquals(2, (int) cardToSlot[8]);
+        assertEquals(8, slotToCard[2]);
+        assertEquals(2, cardToSlot[8]);
     }
 
     @Test
@@ -95,6 +104,180 @@ class TableTest {
         placeSomeCardsAndAssert();
     }
 
+    @Test
+    void tokens_PlaceAndRemove() {
+        fillAllSlots();
+        table.placeToken(1, 3);
+
+        assertTrue(table.containPlayerToken(1, 3));
+        assertFalse(table.containPlayerToken(0, 3));
+        assertTrue(table.removeToken(1, 3));
+        assertFalse(table.removeToken(1, 3));
+    }
+
+    @Test
+    void snapshot_SeesCardsAndTokens() {
+        table.placeCard(8, 2);
+        table.placeCard(5, 0);
+        table.placeToken(1, 2);
+        Table.Snapshot snapshot = table.snapshot(new Table.Snapshot());
+
+        assertEquals(8, snapshot.card(2));
+        assertEquals(Table.EMPTY, snapshot.card(1));
+        assertEquals(2, snapshot.countCards());
+        assertEquals(0, snapshot.slotOf(5));
+        assertTrue(snapshot.hasToken(1, 2));
+        assertFalse(snapshot.hasToken(0, 2));
+        assertEquals(table.version(), snapshot.version());
+
+        table.removeCard(2);
+        assertFalse(table.snapshot(snapshot).hasToken(1, 2));
+        assertEquals(1, snapshot.countCards());
+    }
+
+    @Test
+    void snapshot_WaitsForUpdateInProgress() throws InterruptedException {
+        table.placeCard(8, 0);
+        table.beginUpdate();
+        table.removeCard(0);
+        int[] seen = new int[1];
+        Thread reader = new Thread(() -> seen[0] = table.snapshot(new Table.Snapshot()).card(0) + 100);
+        reader.start();
+        reader.join(100);
+        assertTrue(reader.isAlive()); // the removal is part of an update that is not over
+
+        table.placeCard(7, 0);
+        table.endUpdate();
+        reader.join();
+        assertEquals(107, seen[0]); // never 8 - the removed card - nor EMPTY
+        assertTrue(table.snapshotRetries() > 0);
+    }
+
+    @Test
+    void removeCard_DisplayedBeforeTheSlotIsRefilled() throws InterruptedException {
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        MockLogger logger = new MockLogger();
+        Properties properties = new Properties();
+        properties.put("TableDelaySeconds", "0");
+        Config config = new Config(logger, properties);
+        Env env = new Env(logger, config, new MockUserInterface() {
+            @Override
+            public void placeCard(int card, int slot) {
+                events.add("place " + card);
+            }
+
+            @Override
+            public void removeCard(int slot) {
+                try {
+                    Thread.sleep(100); // the collecting player is preempted while publishing the removal
+                } catch (InterruptedException ignored) {
+                }
+                events.add("remove");
+            }
+        }, new MockUtil());
+        Table table = new Table(env);
+        table.placeCard(8, 0);
+
+        Thread collector = new Thread(() -> table.removeCard(0));
+        collector.start();
+        while (table.getSlotToCard()[0] != Table.EMPTY) // the dealer refills the slot as soon as it looks empty
+            Thread.yield();
+        table.placeCard(7, 0);
+        collector.join();
+
+        assertEquals(Arrays.asList("place 8", "remove", "place 7"), events);
+    }
+
+    @Test
+    void placeCard_WakesOnlyWaitersOfThatSlot() throws InterruptedException {
+        int waitersPerSlot = 32;
+        Thread[] waiters = new Thread[waitersPerSlot * slotToCard.length];
+        for (int i = 0; i < waiters.length; i++) {
+            int slot = i % slotToCard.length;
+            waiters[i] = new Thread(() -> table.awaitCard(slot));
+            waiters[i].start();
+        }
+        for (Thread waiter : waiters)
+            while (waiter.getState() != Thread.State.WAITING)
+                Thread.yield();
+
+        table.placeCard(8, 0);
+        for (int i = 0; i < waiters.length; i += slotToCard.length)
+            waiters[i].join();
+
+        assertEquals(waitersPerSlot, table.slotWakeups());
+        for (int i = 1; i < waiters.length; i += slotToCard.length)
+            assertTrue(waiters[i].isAlive());
+
+        for (int slot = 1; slot < slotToCard.length; slot++)
+            table.placeCard(slot, slot);
+        for (Thread waiter : waiters)
+            waiter.join();
+
+        // every waiter was woken up exactly once
+        assertEquals(waiters.length, table.slotWakeups());
+    }
+
+    @Test
+    void awaitCard_WaitsAgainAfterReshuffle() throws InterruptedException {
+        table.setNoMoreCards(true);
+        assertFalse(table.awaitCard(0)); // the deck is empty: no card will come
+
+        table.setNoMoreCards(false); // the cards returned to the deck are dealt again
+        boolean[] card = {false};
+        Thread waiter = new Thread(() -> card[0] = table.awaitCard(0));
+        waiter.start();
+        while (waiter.getState() != Thread.State.WAITING)
+            Thread.yield();
+
+        table.placeCard(8, 0);
+        waiter.join();
+        assertTrue(card[0]);
+    }
+
+    @Test
+    void awaitCard_ColumnRemoved_StopsWaiting() throws InterruptedException {
+        Config config = new Config(new MockLogger(), new Properties());
+        int[] grown = new int[config.maxTableSize];
+        Arrays.fill(grown, Table.EMPTY);
+        int[] cards = new int[config.deckSize];
+        Arrays.fill(cards, Table.EMPTY);
+        Table table = new Table(new Env(new MockLogger(), config, new MockUserInterface(), new MockUtil()), grown, cards);
+        assertEquals(config.tableSize, table.activeSlots());
+
+        table.setActiveSlots(config.maxTableSize);
+        boolean[] card = {true};
+        Thread waiter = new Thread(() -> card[0] = table.awaitCard(config.maxTableSize - 1));
+        waiter.start();
+        while (waiter.getState() != Thread.State.WAITING)
+            Thread.yield();
+
+        table.setActiveSlots(config.tableSize);
+        waiter.join();
+        assertFalse(card[0]);
+    }
+
+    @Test
+    void footprint_IsCompact() {
+        Properties properties = new Properties();
+        properties.put("TableDelaySeconds", "0");
+        MockLogger logger = new MockLogger();
+        Config config = new Config(logger, properties);
+        Table fullSize = new Table(new Env(logger, config, new MockUserInterface(), new MockUtil()));
+
+        long bytes = GraphLayout.parseInstance(fullSize.slotToCard, fullSize.cardToSlot, fullSize.tokens, fullSize.slotStates).totalSize();
+
+        // the same state in the boxed representation (null for empty slots and cards, a Boolean per token)
+        Boolean[][] boxedTokens = new Boolean[config.maxTableSize][config.players];
+        for (Boolean[] slotTokens : boxedTokens)
+            Arrays.fill(slotTokens, false);
+        long boxedBytes = GraphLayout.parseInstance(new Integer[config.maxTableSize], new Integer[config.deckSize], boxedTokens).totalSize();
+
+        logger.info("table footprint (" + config.maxTableSize + " slots, " + config.deckSize + " cards, "
+                + config.players + " players): " + bytes + " bytes (boxed: " + boxedBytes + " bytes)");
+        assertTrue(bytes < boxedBytes, "table footprint is " + bytes + " bytes, boxed is " + boxedBytes + " bytes");
+    }
+
     static class MockUserInterface implements UserInterface {
         @Override
         public void dispose() {}
@@ -105,6 +288,8 @@ class TableTest {
         @Override
         public void setCountdown(long millies, boolean warn) {}
         @Override
+        public void startCountdown(long millies, long warnMillis) {}
+        @Override
         public void setElapsed(long millies) {}
         @Override
         public void setScore(int player, int score) {}
@@ -138,11 +323,24 @@ class TableTest {
             return false;
         }
 
+        @Override
+        public void testSets(int[] first, int[] second, int[] third, int count, long[] legal) {}
+
         @Override
         public List<int[]> findSets(List<Integer> deck, int count) {
             return null;
         }
 
+        @Override
+        public int[] findSet(List<Integer> deck) {
+            return null;
+        }
+
+        @Override
+        public CardSets findSetsParallel(List<Integer> deck, int count) {
+            return null;
+        }
+
         @Override
         public void spin() {}
     }
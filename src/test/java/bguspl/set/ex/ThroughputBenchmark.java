@@ -0,0 +1,182 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.GameStatistics;
+import bguspl.set.UserInterfaceHeadless;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Plays real games (dealer, players and table, with a headless user interface, no table delay and tiny freezes) for
+ * each number of computer players and table size, and measures the correct sets per second, the claims per second,
+ * the 99th percentile claim latency, the CPU time per set and the dead time (the share of the time spent waiting for a
+ * reshuffle on a table without a legal set).
+ * The total sets per second of each table size (over all the numbers of players, since a single run depends a lot on
+ * the cards dealt) is compared with src/test/resources/throughput-baseline.properties and the differences are
+ * printed. The games are played by random bots on the system clock, so the numbers depend on the machine and vary
+ * between runs: the baseline records the hardware it was measured on, and the benchmark only fails on a regression
+ * of more than the threshold when asked to (-Dbenchmark.gate=true) and run on the same hardware.
+ * The measured values are written to target/throughput-results.properties (copy it over the baseline to update it).
+ * Run with: mvn test -Pbenchmark [-Dbenchmark.seconds=2] [-Dbenchmark.threshold=0.5] [-Dbenchmark.gate=true]
+ * [-Dbenchmark.addedColumns=1] (the columns the dealer may add to a table without a set, 0 to disable)
+ */
+class ThroughputBenchmark {
+
+    private static final int[] PLAYERS = {1, 2, 4, 8, 16, 32, 64, 128, 256};
+    private static final int[][] TABLES = {{3, 4}, {3, 7}};
+
+    @Test
+    void throughput_ComparedWithBaseline() throws Exception {
+        double seconds = Double.parseDouble(System.getProperty("benchmark.seconds", "2"));
+        double threshold = Double.parseDouble(System.getProperty("benchmark.threshold", "0.5"));
+        boolean gate = Boolean.getBoolean("benchmark.gate");
+        int addedColumns = Integer.getInteger("benchmark.addedColumns", 1);
+        Properties baseline = new Properties();
+        try (InputStream is = ThroughputBenchmark.class.getResourceAsStream("/throughput-baseline.properties")) {
+            if (is != null) baseline.load(is);
+        }
+        String hardware = hardware();
+        boolean sameHardware = hardware.equals(baseline.getProperty("hardware"));
+        System.out.println("hardware: " + hardware + (sameHardware ? "" : " (baseline: " + baseline.getProperty("hardware") + ")"));
+
+        Properties results = new Properties();
+        results.setProperty("hardware", hardware);
+        List<String> regressions = new ArrayList<>();
+        System.out.println("players slots    sets/s  claims/s  p99 claim  cpu/set   dead");
+        for (int[] table : TABLES) {
+            double total = 0;
+            for (int players : PLAYERS) {
+                Result result = run(players, table[0], table[1], addedColumns, seconds);
+                System.out.printf("%7d %5d %9.1f %9.1f %8.1fus %7.2fms %5.1f%%%n", players, table[0] * table[1],
+                        result.setsPerSecond, result.claimsPerSecond, result.p99ClaimNanos / 1e3, result.cpuMillisPerSet,
+                        result.deadFraction * 100);
+                results.setProperty("sets.players." + players + ".slots." + table[0] * table[1], String.format("%.1f", result.setsPerSecond));
+                total += result.setsPerSecond;
+            }
+
+            String key = "sets.total.slots." + table[0] * table[1];
+            results.setProperty(key, String.format("%.1f", total));
+            String expected = baseline.getProperty(key);
+            if (expected == null) continue;
+            System.out.printf("%s: %.1f sets/s, baseline %s (%+.0f%%)%n", key, total, expected,
+                    100 * (total / Double.parseDouble(expected) - 1));
+            if (total < Double.parseDouble(expected) * (1 - threshold))
+                regressions.add(String.format("%s: %.1f sets/s (baseline %s)", key, total, expected));
+        }
+
+        Path output = Paths.get("target", "throughput-results.properties");
+        Files.createDirectories(output.getParent());
+        try (OutputStream os = Files.newOutputStream(output)) {
+            results.store(os, "sets per second per number of players and table size");
+        }
+        if (!regressions.isEmpty())
+            System.out.println("throughput regressed by more than " + threshold * 100 + "%: " + regressions);
+        if (gate) {
+            assertTrue(sameHardware, "the baseline was measured on other hardware: " + baseline.getProperty("hardware"));
+            assertTrue(regressions.isEmpty(), "throughput regressed by more than " + threshold * 100 + "%: " + regressions);
+        }
+    }
+
+    /**
+     * @return - the number of cores, the processor model (where known), the architecture and the Java version.
+     */
+    private static String hardware() {
+        String cpu = System.getProperty("os.arch");
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/cpuinfo")))
+                if (line.startsWith("model name")) {
+                    cpu = line.substring(line.indexOf(':') + 1).trim() + " " + cpu;
+                    break;
+                }
+        } catch (IOException | RuntimeException ignored) {
+            // not Linux: the architecture will do
+        }
+        return Runtime.getRuntime().availableProcessors() + " cores, " + cpu + ", Java " + System.getProperty("java.version");
+    }
+
+    /**
+     * Plays games one after the other until the time is up.
+     */
+    private static Result run(int players, int rows, int columns, int addedColumns, double seconds) throws InterruptedException, IOException {
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", Integer.toString(players));
+        properties.put("Rows", Integer.toString(rows));
+        properties.put("Columns", Integer.toString(columns));
+        properties.put("MaxColumns", Integer.toString(columns + addedColumns));
+        properties.put("TurnTimeoutSeconds", "0.1"); // do not wait long on a table without a set
+        properties.put("TurnTimeoutWarningSeconds", "0.1");
+        properties.put("PointFreezeSeconds", "0.001");
+        properties.put("PenaltyFreezeSeconds", "0.001");
+        properties.put("TableDelaySeconds", "0");
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+        Env env = new Env(logger, config, new UserInterfaceHeadless(), new UtilImpl(config));
+
+        long sets = 0, claims = 0, p99 = 0, reshuffles = 0;
+        long cpuStart = processCpuNanos();
+        long start = System.nanoTime();
+        long deadline = start + (long) (seconds * 1e9);
+        while (System.nanoTime() < deadline) {
+            Table table = new Table(env);
+            Player[] gamePlayers = new Player[players];
+            Dealer dealer = new Dealer(env, table, gamePlayers);
+            for (int i = 0; i < players; i++)
+                gamePlayers[i] = new Player(env, dealer, table, i, false);
+
+            Thread dealerThread = env.threads.start(dealer, "dealer");
+            dealerThread.join(Math.max(1, (deadline - System.nanoTime()) / 1_000_000));
+            dealer.terminate();
+            env.threads.shutdown(config.shutdownTimeoutMillis);
+
+            GameStatistics statistics = dealer.statistics();
+            sets += statistics.sets();
+            claims += statistics.claims();
+            reshuffles += statistics.reshuffles();
+            p99 = Math.max(p99, statistics.claimLatencyPercentile(0.99)); // an upper bound over all the games
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long cpu = processCpuNanos() - cpuStart;
+        double dead = Math.min(1, reshuffles * config.turnTimeoutMillis / 1e3 / elapsed); // each reshuffle waited out a turn
+        return new Result(sets / elapsed, claims / elapsed, p99, sets == 0 || cpu < 0 ? Double.NaN : cpu / 1e6 / sets, dead);
+    }
+
+    private static long processCpuNanos() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean)
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        return -1;
+    }
+
+    private static class Result {
+
+        private final double setsPerSecond;
+        private final double claimsPerSecond;
+        private final long p99ClaimNanos;
+        private final double cpuMillisPerSet;
+        private final double deadFraction;
+
+        private Result(double setsPerSecond, double claimsPerSecond, long p99ClaimNanos, double cpuMillisPerSet, double deadFraction) {
+            this.setsPerSecond = setsPerSecond;
+            this.claimsPerSecond = claimsPerSecond;
+            this.p99ClaimNanos = p99ClaimNanos;
+            this.cpuMillisPerSet = cpuMillisPerSet;
+            this.deadFraction = deadFraction;
+        }
+    }
+}